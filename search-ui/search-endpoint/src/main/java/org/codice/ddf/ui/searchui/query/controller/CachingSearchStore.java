@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.codice.ddf.ui.searchui.query.model.Search;
+import org.codice.ddf.ui.searchui.query.model.SearchRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * The default {@link SearchStore}, backed by a lock-striped Guava cache. Searches expire once they
+ * have not been touched for the configured time to live, and the store is bounded both by number
+ * of searches and by their estimated memory use. The least recently used searches are evicted
+ * first.
+ *
+ * Writes share the read side of a lock so that {@link #configure} can take the write side while
+ * it copies the searches into a cache with the new bounds, without losing concurrent updates.
+ */
+public class CachingSearchStore implements SearchStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingSearchStore.class);
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong contention = new AtomicLong();
+
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    private volatile Cache<String, Search> cache;
+
+    private volatile EvictionListener evictionListener;
+
+    private long maxEntries;
+
+    private long maxBytes;
+
+    private long timeToLiveMillis;
+
+    /**
+     * Create a new CachingSearchStore
+     *
+     * @param maxEntries
+     *            - maximum number of searches to keep
+     * @param maxBytes
+     *            - estimated maximum memory used by the searches
+     * @param timeToLiveMillis
+     *            - time after which a search that has not been touched expires, 0 to never expire
+     */
+    public CachingSearchStore(long maxEntries, long maxBytes, long timeToLiveMillis) {
+        configure(maxEntries, maxBytes, timeToLiveMillis);
+    }
+
+    /**
+     * Changes the bounds of the store. Searches already in the store are kept, as far as they fit
+     * within the new bounds.
+     */
+    public final synchronized void configure(long maxEntries, long maxBytes,
+            long timeToLiveMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.timeToLiveMillis = Math.max(0, timeToLiveMillis);
+
+        // every search weighs at least its share of the memory budget, so the weight limit also
+        // caps the number of searches
+        final int minimumWeight = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                this.maxBytes / this.maxEntries));
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumWeight(this.maxBytes);
+        if (this.timeToLiveMillis > 0) {
+            builder.expireAfterAccess(this.timeToLiveMillis, TimeUnit.MILLISECONDS);
+        }
+        Cache<String, Search> newCache = builder.weigher(new Weigher<String, Search>() {
+            @Override
+            public int weigh(String id, Search search) {
+                return (int) Math.min(Integer.MAX_VALUE,
+                        Math.max(minimumWeight, search.estimateSize()));
+            }
+        }).removalListener(new RemovalListener<String, Search>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, Search> notification) {
+                if (notification.wasEvicted()) {
+                    evicted(notification.getKey(), notification.getValue(),
+                            notification.getCause().name());
+                }
+            }
+        }).build();
+
+        Lock lock = swapLock.writeLock();
+        lock.lock();
+        try {
+            Cache<String, Search> oldCache = cache;
+            if (oldCache != null) {
+                newCache.putAll(oldCache.asMap());
+            }
+            cache = newCache;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Search getOrCreate(SearchRequest request) {
+        Lock lock = swapLock.readLock();
+        lock.lock();
+        try {
+            return getOrCreate(cache, request);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Search getOrCreate(Cache<String, Search> current, final SearchRequest request) {
+        Search search = current.getIfPresent(request.getId());
+        if (search != null && search.getSearchRequest() != request
+                && search.getSearchRequest().isCancelled()) {
+            // left behind by a cancelled search with the same id
+            current.asMap().remove(request.getId(), search);
+            search = null;
+        }
+        if (search != null) {
+            LOGGER.debug("Using previously created Search object for cache: {}", request.getId());
+            return search;
+        }
+        if (request.isCancelled()) {
+            // the search was evicted or removed; do not bring it back with only part of its state
+            LOGGER.debug("Search {} was cancelled, its results are not stored.", request.getId());
+            Search detached = new Search();
+            detached.setSearchRequest(request);
+            return detached;
+        }
+
+        final boolean[] created = new boolean[1];
+        try {
+            search = current.get(request.getId(), new Callable<Search>() {
+                @Override
+                public Search call() {
+                    LOGGER.debug("Creating new Search object to cache async query results: {}",
+                            request.getId());
+                    created[0] = true;
+                    Search newSearch = new Search();
+                    newSearch.setSearchRequest(request);
+                    return newSearch;
+                }
+            });
+        } catch (ExecutionException e) {
+            // creating a search does not throw checked exceptions
+            throw new IllegalStateException(e.getCause());
+        }
+
+        if (!created[0]) {
+            contention.incrementAndGet();
+        }
+        return search;
+    }
+
+    @Override
+    public Search get(String id) {
+        return cache.getIfPresent(id);
+    }
+
+    @Override
+    public void update(Search search) {
+        String id = search.getSearchRequest().getId();
+        Lock lock = swapLock.readLock();
+        lock.lock();
+        try {
+            // replacing the search with itself makes the cache weigh it again
+            cache.asMap().replace(id, search, search);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        Lock lock = swapLock.readLock();
+        lock.lock();
+        try {
+            cache.invalidate(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    @Override
+    public long size() {
+        Cache<String, Search> current = cache;
+        // expired searches are only dropped during other operations, so drop them before counting
+        current.cleanUp();
+        return current.size();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getContentionCount() {
+        return contention.get();
+    }
+
+    public synchronized long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    private void evicted(String id, Search search, String cause) {
+        evictions.incrementAndGet();
+        LOGGER.debug("Search {} was dropped from the store: {}", id, cause);
+
+        EvictionListener listener = evictionListener;
+        if (listener != null) {
+            try {
+                listener.searchEvicted(id, search);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Search eviction listener failed for search {}.", id, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "searches=" + cache.size() + ", evictions=" + evictions.get() + ", contention="
+                + contention.get();
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cometd.bayeux.server.BayeuxServer;
+import org.cometd.bayeux.server.ConfigurableServerChannel;
+import org.cometd.bayeux.server.ServerChannel;
+import org.cometd.bayeux.server.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ChannelPublisher publishes messages on Cometd channels without a lock shared between
+ * channels. Each channel has its own queue; a thread that adds a message drains the queue unless
+ * another thread already is, so messages on one channel keep their order while different channels
+ * publish in parallel. When a channel falls behind, a full snapshot that is followed by a newer
+ * snapshot in the queue is dropped. Messages that are not marked as superseded by later ones, such
+ * as delta updates, are always published.
+ */
+public class ChannelPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChannelPublisher.class);
+
+    private final ConcurrentMap<String, ChannelQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong superseded = new AtomicLong();
+
+    private volatile BayeuxServer bayeuxServer;
+
+    public void setBayeuxServer(BayeuxServer bayeuxServer) {
+        this.bayeuxServer = bayeuxServer;
+    }
+
+    /**
+     * Adds a message to the queue of a channel and publishes the queued messages, unless another
+     * thread is already publishing on the channel.
+     *
+     * @param channelName
+     *            - the channel to publish on
+     * @param message
+     *            - data of the message
+     * @param supersedable
+     *            - true if the message may be skipped when a newer supersedable message is
+     *            queued behind it
+     * @param session
+     *            - session publishing the message
+     */
+    public void publish(String channelName, Map<String, Object> message, boolean supersedable,
+            ServerSession session) {
+        enqueue(channelName, message, supersedable, session);
+        drain(channelName);
+    }
+
+    /**
+     * Adds a message to the queue of a channel without publishing it. Callers that need messages
+     * to be queued in a particular order can enqueue while holding their own lock and drain after
+     * releasing it.
+     */
+    public void enqueue(String channelName, Map<String, Object> message, boolean supersedable,
+            ServerSession session) {
+        Message queued = new Message(message, supersedable, session);
+        while (true) {
+            ChannelQueue queue = getQueue(channelName);
+            synchronized (queue) {
+                if (!queue.removed) {
+                    queue.messages.add(queued);
+                    return;
+                }
+            }
+            // the queue was removed after it was looked up, the next lookup creates a new one
+        }
+    }
+
+    /**
+     * Publishes the messages queued on a channel, unless another thread is already doing so.
+     */
+    public void drain(String channelName) {
+        ChannelQueue queue = queues.get(channelName);
+        if (queue == null) {
+            return;
+        }
+
+        // a thread that finds the queue busy leaves its messages to the thread draining it; the
+        // check after releasing the flag catches messages added just before it was released
+        while (!queue.messages.isEmpty() && queue.draining.compareAndSet(false, true)) {
+            try {
+                Message message;
+                while ((message = queue.messages.poll()) != null) {
+                    Message next = queue.messages.peek();
+                    if (message.supersedable && next != null && next.supersedable) {
+                        superseded.incrementAndGet();
+                        LOGGER.debug("Skipping superseded message on {}", channelName);
+                        continue;
+                    }
+                    send(queue, message);
+                }
+            } finally {
+                queue.draining.set(false);
+            }
+        }
+
+        if (queue.removeRequested) {
+            removeIfIdle(queue);
+        }
+    }
+
+    /**
+     * Forgets a channel that will not be published on again. A channel that still has messages
+     * queued or is being drained is forgotten by the thread draining it once it is empty.
+     */
+    public void remove(String channelName) {
+        ChannelQueue queue = queues.get(channelName);
+        if (queue == null) {
+            return;
+        }
+
+        queue.removeRequested = true;
+        removeIfIdle(queue);
+    }
+
+    /**
+     * @return number of messages skipped because a newer snapshot was queued behind them
+     */
+    public long getSupersededCount() {
+        return superseded.get();
+    }
+
+    int getQueueCount() {
+        return queues.size();
+    }
+
+    private void removeIfIdle(ChannelQueue queue) {
+        // messages are only added to a queue while holding its lock, so none can be added to
+        // it between the check and the removal. A thread that stops draining after the check
+        // sees the request and checks again.
+        synchronized (queue) {
+            if (!queue.removed && queue.messages.isEmpty() && !queue.draining.get()) {
+                queue.removed = true;
+                queues.remove(queue.name, queue);
+            }
+        }
+    }
+
+    private ChannelQueue getQueue(String channelName) {
+        ChannelQueue queue = queues.get(channelName);
+        if (queue == null) {
+            queue = new ChannelQueue(channelName);
+            ChannelQueue existing = queues.putIfAbsent(channelName, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        return queue;
+    }
+
+    private void send(ChannelQueue queue, Message message) {
+        try {
+            ServerChannel channel = queue.channel;
+            if (channel == null || bayeuxServer.getChannel(queue.name) == null) {
+                LOGGER.debug("Creating channel if it doesn't exist: {}", queue.name);
+                bayeuxServer.createChannelIfAbsent(queue.name,
+                        new ConfigurableServerChannel.Initializer() {
+                            public void configureChannel(ConfigurableServerChannel channel) {
+                                channel.setPersistent(true);
+                            }
+                        });
+                channel = bayeuxServer.getChannel(queue.name);
+                queue.channel = channel;
+            }
+
+            LOGGER.debug("Sending results to subscribers on: {}", queue.name);
+            channel.publish(message.session, message.data, null);
+        } catch (RuntimeException e) {
+            // keep draining, one failed message must not stall the channel
+            LOGGER.warn("Unable to publish message on {}", queue.name, e);
+        }
+    }
+
+    private static class ChannelQueue {
+
+        private final String name;
+
+        private final Queue<Message> messages = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        // only touched by the draining thread
+        private ServerChannel channel;
+
+        // set once the channel will not be published on again
+        private volatile boolean removeRequested = false;
+
+        // guarded by the queue itself
+        private boolean removed = false;
+
+        ChannelQueue(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Message {
+
+        private final Map<String, Object> data;
+
+        private final boolean supersedable;
+
+        private final ServerSession session;
+
+        Message(Map<String, Object> data, boolean supersedable, ServerSession session) {
+            this.data = data;
+            this.supersedable = supersedable;
+            this.session = session;
+        }
+    }
+}
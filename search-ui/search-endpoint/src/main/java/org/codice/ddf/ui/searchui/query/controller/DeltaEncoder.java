@@ -0,0 +1,266 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codice.ddf.ui.searchui.query.model.Search;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * The DeltaEncoder turns the full snapshots of a search into the smaller messages pushed to
+ * clients that asked for delta updates. It remembers what was last published on the search
+ * channel, so each message only carries the results that were added, removed or reordered and
+ * the source statuses that changed. Every message carries a sequence number; the first message
+ * of a search and any resynchronization are sent as full snapshots.
+ */
+public class DeltaEncoder {
+
+    public static final String DELTA = "delta";
+
+    public static final String SEQUENCE = "seq";
+
+    public static final String KEYS = "keys";
+
+    public static final String ADDED = "added";
+
+    public static final String REMOVED = "removed";
+
+    public static final String ORDER = "order";
+
+    private static final String PROPERTIES = "properties";
+
+    private static final String GEOMETRY = "geometry";
+
+    private static final String SOURCE_ID = "source-id";
+
+    private static final List<String> AGGREGATIONS = Arrays.asList(Search.CLUSTERS,
+            Search.FACETS);
+
+    private List<String> keys = Collections.emptyList();
+
+    private Map<String, Integer> hashes = new HashMap<>();
+
+    private Map<Object, Object> statuses = new HashMap<>();
+
+    private Set<Object> typeNames = new HashSet<>();
+
+    private JSONObject lastSnapshot;
+
+    private JSONArray lastKeys;
+
+    private long sequence = 0;
+
+    /**
+     * Encodes the next message for a search.
+     *
+     * @param snapshot
+     *            - the complete state of the search
+     * @return a full snapshot if nothing has been published yet, otherwise the changes since the
+     * previous message
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized JSONObject encode(JSONObject snapshot) {
+        sequence++;
+
+        List<Object> results = (List<Object>) snapshot.get(Search.RESULTS);
+        if (results == null) {
+            results = Collections.emptyList();
+        }
+
+        List<String> newKeys = new ArrayList<>(results.size());
+        Map<String, Integer> newHashes = new HashMap<>();
+        JSONObject added = new JSONObject();
+
+        for (Object result : results) {
+            Map<String, Object> resultMap = (Map<String, Object>) result;
+            String key = getKey(resultMap);
+            Integer hash = getHash(resultMap);
+
+            newKeys.add(key);
+            newHashes.put(key, hash);
+            if (!hash.equals(hashes.get(key))) {
+                added.put(key, result);
+            }
+        }
+
+        JSONArray newKeyArray = new JSONArray();
+        newKeyArray.addAll(newKeys);
+
+        JSONObject message;
+        if (lastSnapshot == null) {
+            message = new JSONObject();
+            message.putAll(snapshot);
+            message.put(DELTA, false);
+            message.put(KEYS, newKeyArray);
+        } else {
+            message = encodeDelta(snapshot, newKeys, newHashes, added);
+        }
+        message.put(SEQUENCE, sequence);
+
+        keys = newKeys;
+        hashes = newHashes;
+        lastSnapshot = snapshot;
+        lastKeys = newKeyArray;
+        rememberStatuses(snapshot);
+        rememberTypes(snapshot);
+
+        return message;
+    }
+
+    /**
+     * @return the last published state as a full snapshot, or null if nothing was published yet
+     */
+    public synchronized JSONObject snapshot() {
+        if (lastSnapshot == null) {
+            return null;
+        }
+
+        JSONObject message = new JSONObject();
+        message.putAll(lastSnapshot);
+        message.put(DELTA, false);
+        message.put(KEYS, lastKeys);
+        message.put(SEQUENCE, sequence);
+        return message;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject encodeDelta(JSONObject snapshot, List<String> newKeys,
+            Map<String, Integer> newHashes, JSONObject added) {
+        JSONObject message = new JSONObject();
+        message.put(DELTA, true);
+        message.put(Search.ID, snapshot.get(Search.ID));
+        message.put(Search.HITS, snapshot.get(Search.HITS));
+
+        if (!added.isEmpty()) {
+            message.put(ADDED, added);
+        }
+
+        JSONArray removed = new JSONArray();
+        for (String key : hashes.keySet()) {
+            if (!newHashes.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        if (!removed.isEmpty()) {
+            message.put(REMOVED, removed);
+        }
+
+        if (!newKeys.equals(keys)) {
+            JSONArray order = new JSONArray();
+            order.addAll(newKeys);
+            message.put(ORDER, order);
+        }
+
+        JSONArray changedStatuses = new JSONArray();
+        List<Object> statusList = (List<Object>) snapshot.get(Search.STATUS);
+        if (statusList != null) {
+            for (Object status : statusList) {
+                Object sourceId = ((Map<String, Object>) status).get(Search.ID);
+                if (!status.equals(statuses.get(sourceId))) {
+                    changedStatuses.add(status);
+                }
+            }
+        }
+        if (!changedStatuses.isEmpty()) {
+            message.put(Search.STATUS, changedStatuses);
+        }
+
+        // clusters and facets are small compared to the results, send them whole when they change
+        for (String aggregation : AGGREGATIONS) {
+            Object value = snapshot.get(aggregation);
+            if (value != null && !value.equals(lastSnapshot.get(aggregation))) {
+                message.put(aggregation, value);
+            }
+        }
+
+        // type references are tiny, send them whole
+        if (snapshot.containsKey(Search.METACARD_TYPE_VERSIONS)) {
+            message.put(Search.METACARD_TYPE_VERSIONS,
+                    snapshot.get(Search.METACARD_TYPE_VERSIONS));
+        }
+
+        JSONObject newTypes = new JSONObject();
+        Map<String, Object> types = (Map<String, Object>) snapshot.get(Search.METACARD_TYPES);
+        if (types != null) {
+            for (Map.Entry<String, Object> type : types.entrySet()) {
+                if (!typeNames.contains(type.getKey())) {
+                    newTypes.put(type.getKey(), type.getValue());
+                }
+            }
+        }
+        if (!newTypes.isEmpty()) {
+            message.put(Search.METACARD_TYPES, newTypes);
+        }
+
+        return message;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rememberStatuses(JSONObject snapshot) {
+        List<Object> statusList = (List<Object>) snapshot.get(Search.STATUS);
+        if (statusList != null) {
+            for (Object status : statusList) {
+                statuses.put(((Map<String, Object>) status).get(Search.ID), status);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rememberTypes(JSONObject snapshot) {
+        Map<String, Object> types = (Map<String, Object>) snapshot.get(Search.METACARD_TYPES);
+        if (types != null) {
+            typeNames.addAll(types.keySet());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private String getKey(Map<String, Object> result) {
+        Map<String, Object> properties = getProperties(result);
+        if (properties == null) {
+            return String.valueOf(result.hashCode());
+        }
+        return properties.get(SOURCE_ID) + "/" + properties.get(Search.ID);
+    }
+
+    // the cached date is left out on purpose, it is stamped with the current time on every push
+    // for results that did not come from the cache
+    @SuppressWarnings("unchecked")
+    private Integer getHash(Map<String, Object> result) {
+        Map<String, Object> metacard = (Map<String, Object>) result.get(Search.METACARD);
+        return Arrays.hashCode(new Object[] {result.get(Search.DISTANCE),
+                result.get(Search.RELEVANCE), getProperties(result),
+                metacard == null ? null : metacard.get(GEOMETRY),
+                metacard == null ? null : metacard.get(Search.ACTIONS)});
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getProperties(Map<String, Object> result) {
+        Map<String, Object> metacard = (Map<String, Object>) result.get(Search.METACARD);
+        if (metacard == null) {
+            return null;
+        }
+        return (Map<String, Object>) metacard.get(PROPERTIES);
+    }
+}
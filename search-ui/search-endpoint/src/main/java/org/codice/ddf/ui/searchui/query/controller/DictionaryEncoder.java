@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * The DictionaryEncoder shrinks a search message by replacing the strings that occur more than once
+ * in it, such as attribute names, source ids, metacard type names and action URLs, with references
+ * into a table of strings sent once at the top of the message. Both object keys and string values
+ * are replaced. A reference is written as a tilde followed by the base 36 index of the string;
+ * strings that start with a tilde themselves are escaped with a second tilde.
+ */
+public final class DictionaryEncoder {
+
+    public static final String ENCODING = "encoding";
+
+    public static final String DICTIONARY = "dict";
+
+    public static final String STRINGS = "strings";
+
+    public static final String BODY = "body";
+
+    private static final char REFERENCE = '~';
+
+    // shorter strings are not worth a reference
+    private static final int MIN_LENGTH = 4;
+
+    private DictionaryEncoder() {
+    }
+
+    /**
+     * Encodes a message.
+     *
+     * @param message
+     *            - the message to encode, it is not modified
+     * @return the encoded message, holding the string table and the encoded body
+     */
+    public static JSONObject encode(Map<String, Object> message) {
+        final Map<String, Integer> counts = new HashMap<>();
+        count(message, counts);
+
+        List<String> strings = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1) {
+                strings.add(entry.getKey());
+            }
+        }
+        // the most frequent strings get the shortest references
+        Collections.sort(strings, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int byCount = counts.get(b).compareTo(counts.get(a));
+                return byCount != 0 ? byCount : a.compareTo(b);
+            }
+        });
+
+        Map<String, String> references = new HashMap<>();
+        for (int i = 0; i < strings.size(); i++) {
+            references.put(strings.get(i), REFERENCE + Integer.toString(i, 36));
+        }
+
+        JSONArray table = new JSONArray();
+        table.addAll(strings);
+
+        JSONObject encoded = new JSONObject();
+        encoded.put(ENCODING, DICTIONARY);
+        encoded.put(STRINGS, table);
+        encoded.put(BODY, encodeValue(message, references));
+        return encoded;
+    }
+
+    private static void count(Object value, Map<String, Integer> counts) {
+        if (value instanceof String) {
+            String string = (String) value;
+            if (string.length() >= MIN_LENGTH) {
+                Integer count = counts.get(string);
+                counts.put(string, count == null ? 1 : count + 1);
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                count(String.valueOf(entry.getKey()), counts);
+                count(entry.getValue(), counts);
+            }
+        } else if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                count(item, counts);
+            }
+        }
+    }
+
+    private static Object encodeValue(Object value, Map<String, String> references) {
+        if (value instanceof String) {
+            return encodeString((String) value, references);
+        } else if (value instanceof Map) {
+            JSONObject object = new JSONObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                object.put(encodeString(String.valueOf(entry.getKey()), references),
+                        encodeValue(entry.getValue(), references));
+            }
+            return object;
+        } else if (value instanceof Collection) {
+            JSONArray array = new JSONArray();
+            for (Object item : (Collection<?>) value) {
+                array.add(encodeValue(item, references));
+            }
+            return array;
+        }
+        return value;
+    }
+
+    private static String encodeString(String string, Map<String, String> references) {
+        String reference = references.get(string);
+        if (reference != null) {
+            return reference;
+        } else if (!string.isEmpty() && string.charAt(0) == REFERENCE) {
+            return REFERENCE + string;
+        }
+        return string;
+    }
+}
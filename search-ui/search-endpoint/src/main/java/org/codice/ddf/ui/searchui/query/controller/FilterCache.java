@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.geotools.filter.text.cql2.CQLException;
+import org.geotools.filter.text.ecql.ECQL;
+import org.opengis.filter.Filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * The FilterCache remembers the filter parsed from a CQL string, so the same query sent again when
+ * paging, sorting or re-running a workspace search is not parsed again. Entries are keyed by the
+ * CQL with its whitespace normalized, and the least recently used are dropped first. The time
+ * spent parsing is recorded with the hit and miss counts.
+ */
+public class FilterCache {
+
+    private volatile Cache<String, Filter> cache;
+
+    private volatile long maxEntries;
+
+    /**
+     * Create a new FilterCache
+     *
+     * @param maxEntries
+     *            - maximum number of filters to keep, 0 disables the cache
+     */
+    public FilterCache(long maxEntries) {
+        configure(maxEntries);
+    }
+
+    /**
+     * Changes the maximum number of filters kept. The current contents are dropped.
+     */
+    public final synchronized void configure(long maxEntries) {
+        this.maxEntries = maxEntries;
+        cache = maxEntries <= 0 ?
+                null :
+                CacheBuilder.newBuilder().maximumSize(maxEntries).recordStats()
+                        .<String, Filter>build();
+    }
+
+    /**
+     * Returns the filter for a CQL string, parsing it only if it is not already cached.
+     *
+     * @param cql
+     *            - the CQL to parse
+     * @return the filter for the CQL. The returned filter is shared and must not be modified.
+     * @throws CQLException
+     *             if the CQL could not be parsed
+     */
+    public Filter get(final String cql) throws CQLException {
+        Cache<String, Filter> current = cache;
+        if (current == null || cql == null) {
+            return ECQL.toFilter(cql);
+        }
+
+        try {
+            return current.get(normalize(cql), new Callable<Filter>() {
+                @Override
+                public Filter call() throws CQLException {
+                    return ECQL.toFilter(cql);
+                }
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CQLException) {
+                throw (CQLException) e.getCause();
+            }
+            throw new IllegalArgumentException("Unable to parse CQL " + cql, e.getCause());
+        }
+    }
+
+    /**
+     * @return hit and miss counts of the cache, and the time spent parsing the misses
+     */
+    public CacheStats getStats() {
+        Cache<String, Filter> current = cache;
+        return current == null ? new CacheStats(0, 0, 0, 0, 0, 0) : current.stats();
+    }
+
+    public long size() {
+        Cache<String, Filter> current = cache;
+        return current == null ? 0 : current.size();
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Trims the CQL and collapses each run of whitespace into a single space, except inside
+     * quoted literals where whitespace is significant.
+     */
+    static String normalize(String cql) {
+        StringBuilder normalized = new StringBuilder(cql.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < cql.length(); i++) {
+            char c = cql.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            space = false;
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                // an escaped quote is doubled, so it closes the literal and opens it again
+                quote = 0;
+            }
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+}
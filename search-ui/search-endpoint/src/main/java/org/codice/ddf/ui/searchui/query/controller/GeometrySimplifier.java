@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * The GeometrySimplifier reduces a GeoJSON geometry to what is needed to draw it on a map at a
+ * given tolerance. Lines and polygon rings are simplified with the Douglas-Peucker algorithm, and
+ * every coordinate is rounded to a precision a tenth of the tolerance. Rings keep at least four
+ * positions and lines at least two, so no part of the geometry disappears. The geometry passed in
+ * is never modified, since it usually belongs to a cached metacard.
+ */
+public final class GeometrySimplifier {
+
+    public static final String TYPE = "type";
+
+    public static final String COORDINATES = "coordinates";
+
+    public static final String GEOMETRIES = "geometries";
+
+    private static final int MIN_RING_SIZE = 4;
+
+    private static final int MIN_LINE_SIZE = 2;
+
+    private GeometrySimplifier() {
+    }
+
+    /**
+     * @param geometry
+     *            - GeoJSON geometry
+     * @param tolerance
+     *            - largest distance, in the units of the coordinates, by which the simplified
+     *            geometry may depart from the original
+     * @return the simplified geometry, or the given one if it is not a known GeoJSON geometry
+     */
+    public static Map<String, Object> simplify(Map<String, Object> geometry, double tolerance) {
+        if (geometry == null || tolerance <= 0) {
+            return geometry;
+        }
+
+        Object type = geometry.get(TYPE);
+        Object coordinates = geometry.get(COORDINATES);
+        double scale = Math.pow(10, Math.max(0, Math.ceil(-Math.log10(tolerance / 10))));
+
+        Object simplified;
+        if ("GeometryCollection".equals(type) && geometry.get(GEOMETRIES) instanceof List) {
+            JSONArray geometries = new JSONArray();
+            for (Object member : (List<?>) geometry.get(GEOMETRIES)) {
+                geometries.add(member instanceof Map ?
+                        simplify(asMap(member), tolerance) :
+                        member);
+            }
+            JSONObject collection = new JSONObject();
+            collection.putAll(geometry);
+            collection.put(GEOMETRIES, geometries);
+            return collection;
+        } else if (!(coordinates instanceof List)) {
+            return geometry;
+        } else if ("Point".equals(type)) {
+            simplified = round((List<?>) coordinates, scale);
+        } else if ("MultiPoint".equals(type)) {
+            simplified = roundAll((List<?>) coordinates, scale);
+        } else if ("LineString".equals(type)) {
+            simplified = simplifyLine((List<?>) coordinates, tolerance, scale, MIN_LINE_SIZE);
+        } else if ("MultiLineString".equals(type)) {
+            simplified = simplifyLines((List<?>) coordinates, tolerance, scale, MIN_LINE_SIZE);
+        } else if ("Polygon".equals(type)) {
+            simplified = simplifyLines((List<?>) coordinates, tolerance, scale, MIN_RING_SIZE);
+        } else if ("MultiPolygon".equals(type)) {
+            JSONArray polygons = new JSONArray();
+            for (Object polygon : (List<?>) coordinates) {
+                polygons.add(simplifyLines((List<?>) polygon, tolerance, scale, MIN_RING_SIZE));
+            }
+            simplified = polygons;
+        } else {
+            return geometry;
+        }
+
+        JSONObject result = new JSONObject();
+        result.putAll(geometry);
+        result.put(COORDINATES, simplified);
+        return result;
+    }
+
+    /**
+     * @return the number of positions in a GeoJSON geometry
+     */
+    public static int countPositions(Map<String, Object> geometry) {
+        if (geometry == null) {
+            return 0;
+        }
+        if (geometry.get(GEOMETRIES) instanceof List) {
+            int count = 0;
+            for (Object member : (List<?>) geometry.get(GEOMETRIES)) {
+                if (member instanceof Map) {
+                    count += countPositions(asMap(member));
+                }
+            }
+            return count;
+        }
+        return countPositions(geometry.get(COORDINATES));
+    }
+
+    private static int countPositions(Object coordinates) {
+        if (!(coordinates instanceof List) || ((List<?>) coordinates).isEmpty()) {
+            return 0;
+        }
+        List<?> list = (List<?>) coordinates;
+        if (list.get(0) instanceof Number) {
+            return 1;
+        }
+        int count = 0;
+        for (Object item : list) {
+            count += countPositions(item);
+        }
+        return count;
+    }
+
+    private static JSONArray simplifyLines(List<?> lines, double tolerance, double scale,
+            int minSize) {
+        JSONArray simplified = new JSONArray();
+        for (Object line : lines) {
+            simplified.add(simplifyLine((List<?>) line, tolerance, scale, minSize));
+        }
+        return simplified;
+    }
+
+    private static JSONArray simplifyLine(List<?> line, double tolerance, double scale,
+            int minSize) {
+        int size = line.size();
+        if (size <= minSize) {
+            return roundAll(line, scale);
+        }
+
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+
+        // iterative Douglas-Peucker, so very long lines cannot overflow the stack
+        Deque<int[]> spans = new ArrayDeque<>();
+        spans.push(new int[] {0, size - 1});
+        double toleranceSquared = tolerance * tolerance;
+        while (!spans.isEmpty()) {
+            int[] span = spans.pop();
+            int farthest = -1;
+            double farthestDistance = toleranceSquared;
+            for (int i = span[0] + 1; i < span[1]; i++) {
+                double distance = segmentDistanceSquared((List<?>) line.get(i),
+                        (List<?>) line.get(span[0]), (List<?>) line.get(span[1]));
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest > 0) {
+                keep[farthest] = true;
+                spans.push(new int[] {span[0], farthest});
+                spans.push(new int[] {farthest, span[1]});
+            }
+        }
+
+        List<Object> kept = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                kept.add(line.get(i));
+            }
+        }
+        if (kept.size() < minSize) {
+            // too coarse for this tolerance, keep the shape rather than collapse it
+            return roundAll(line, scale);
+        }
+        return roundAll(kept, scale);
+    }
+
+    private static double segmentDistanceSquared(List<?> point, List<?> start, List<?> end) {
+        double x = coordinate(point, 0);
+        double y = coordinate(point, 1);
+        double x1 = coordinate(start, 0);
+        double y1 = coordinate(start, 1);
+        double dx = coordinate(end, 0) - x1;
+        double dy = coordinate(end, 1) - y1;
+
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+        }
+        double px = x1 + t * dx - x;
+        double py = y1 + t * dy - y;
+        return px * px + py * py;
+    }
+
+    private static double coordinate(List<?> position, int index) {
+        return ((Number) position.get(index)).doubleValue();
+    }
+
+    private static JSONArray roundAll(List<?> positions, double scale) {
+        JSONArray rounded = new JSONArray();
+        for (Object position : positions) {
+            rounded.add(round((List<?>) position, scale));
+        }
+        return rounded;
+    }
+
+    private static JSONArray round(List<?> position, double scale) {
+        JSONArray rounded = new JSONArray();
+        for (Object value : position) {
+            if (value instanceof Number) {
+                rounded.add(Math.round(((Number) value).doubleValue() * scale) / scale);
+            } else {
+                rounded.add(value);
+            }
+        }
+        return rounded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+}
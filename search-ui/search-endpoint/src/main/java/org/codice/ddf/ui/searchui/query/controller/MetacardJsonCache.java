@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.json.simple.JSONObject;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.transform.CatalogTransformerException;
+
+/**
+ * The MetacardJsonCache remembers the GeoJSON produced for a metacard so the same metacard is not
+ * converted again on every push or for every user that finds it. Entries are keyed by metacard id,
+ * source id and modified date, so a changed metacard is converted again. The cache is bounded
+ * both by number of entries and by the estimated memory used by the cached JSON.
+ * <p>
+ * Entries are shared by every user that finds the metacard, actions included. Actions are built
+ * from the metacard alone, so the action providers must not make them depend on the user.
+ */
+public class MetacardJsonCache {
+
+    // rough per-entry overhead of the map entries and key
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private volatile Cache<Key, JSONObject> cache;
+
+    private volatile long maxEntries;
+
+    private volatile long maxBytes;
+
+    /**
+     * Create a new MetacardJsonCache
+     *
+     * @param maxEntries
+     *            - maximum number of metacards to keep, 0 disables the cache
+     * @param maxBytes
+     *            - estimated maximum memory used by the cached JSON
+     */
+    public MetacardJsonCache(long maxEntries, long maxBytes) {
+        configure(maxEntries, maxBytes);
+    }
+
+    /**
+     * Changes the cache bounds. The current contents are dropped.
+     */
+    public final synchronized void configure(long maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            cache = null;
+            return;
+        }
+
+        // every entry weighs at least its share of the memory budget, so the weight limit also
+        // caps the number of entries
+        final int minimumWeight = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                maxBytes / maxEntries));
+        cache = CacheBuilder.newBuilder().maximumWeight(maxBytes)
+                .weigher(new Weigher<Key, JSONObject>() {
+                    @Override
+                    public int weigh(Key key, JSONObject value) {
+                        long weight = ENTRY_OVERHEAD + estimateSize(value);
+                        return (int) Math.min(Integer.MAX_VALUE,
+                                Math.max(minimumWeight, weight));
+                    }
+                }).recordStats().build();
+    }
+
+    /**
+     * Returns the JSON for a metacard, converting it only if it is not already cached.
+     *
+     * @param metacard
+     *            - the metacard to convert
+     * @param converter
+     *            - produces the JSON when it is not cached
+     * @return the JSON for the metacard. The returned object is shared and must not be modified.
+     * @throws CatalogTransformerException
+     *             if the metacard could not be converted
+     */
+    public JSONObject get(Metacard metacard, Callable<JSONObject> converter) throws
+            CatalogTransformerException {
+        Cache<Key, JSONObject> current = cache;
+        Date modified = metacard.getModifiedDate();
+
+        try {
+            if (current == null || metacard.getId() == null || modified == null) {
+                return converter.call();
+            }
+            return current.get(new Key(metacard.getId(), metacard.getSourceId(),
+                    modified.getTime()), converter);
+        } catch (Exception e) {
+            throw toTransformerException(e);
+        }
+    }
+
+    private CatalogTransformerException toTransformerException(Exception e) {
+        if (e instanceof CatalogTransformerException) {
+            return (CatalogTransformerException) e;
+        }
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        if (cause instanceof CatalogTransformerException) {
+            return (CatalogTransformerException) cause;
+        }
+        return new CatalogTransformerException("Unable to convert metacard to JSON.", cause);
+    }
+
+    /**
+     * @return hit, miss and eviction statistics of the cache
+     */
+    public CacheStats getStats() {
+        Cache<Key, JSONObject> current = cache;
+        return current == null ? new CacheStats(0, 0, 0, 0, 0, 0) : current.stats();
+    }
+
+    public long size() {
+        Cache<Key, JSONObject> current = cache;
+        return current == null ? 0 : current.size();
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return size() + " entries, " + getStats();
+    }
+
+    /**
+     * Estimates the memory used by a JSON value, counting two bytes per character of text and a
+     * fixed amount for numbers, booleans and containers.
+     */
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof Map) {
+            long size = 48;
+            for (Object entry : ((Map<?, ?>) value).entrySet()) {
+                Map.Entry<?, ?> mapEntry = (Map.Entry<?, ?>) entry;
+                size += 32 + estimateSize(mapEntry.getKey()) + estimateSize(mapEntry.getValue());
+            }
+            return size;
+        } else if (value instanceof Collection) {
+            long size = 40;
+            for (Object item : (Collection<?>) value) {
+                size += 8 + estimateSize(item);
+            }
+            return size;
+        } else if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        return 24;
+    }
+
+    private static class Key {
+
+        private final String id;
+
+        private final String sourceId;
+
+        private final long modified;
+
+        Key(String id, String sourceId, long modified) {
+            this.id = id;
+            this.sourceId = sourceId;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return modified == other.modified && id.equals(other.id) && Objects
+                    .equal(sourceId, other.sourceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(id, sourceId, modified);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.MetacardType;
+import net.minidev.json.JSONObject;
+
+/**
+ * The MetacardTypeRegistry serializes the schema of each metacard type once and hands out the
+ * same JSON on every push. Each schema carries a version computed from its attribute
+ * descriptors; when a type with the same name comes back with different descriptors the schema
+ * is serialized again under the new version.
+ */
+public class MetacardTypeRegistry {
+
+    private static final String FORMAT = "format";
+
+    private static final String INDEXED = "indexed";
+
+    private final ConcurrentMap<String, Schema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the schema of a metacard type, serializing it only if the type is new or changed.
+     *
+     * @param type
+     *            - the metacard type
+     * @return the registered schema. The JSON is shared and must not be modified.
+     */
+    public Schema getSchema(MetacardType type) {
+        Schema schema = schemas.get(type.getName());
+        if (schema != null && schema.type == type) {
+            return schema;
+        }
+
+        String version = getVersion(type);
+        if (schema == null || !schema.version.equals(version)) {
+            schema = new Schema(type, version, convertToJSON(type));
+        } else {
+            // same descriptors, different instance, remember it to skip the version check
+            schema = new Schema(type, version, schema.json);
+        }
+        schemas.put(type.getName(), schema);
+        return schema;
+    }
+
+    /**
+     * @param name
+     *            - name of a metacard type
+     * @return the schema registered under the name, or null if the type has not been seen
+     */
+    public Schema getSchema(String name) {
+        return schemas.get(name);
+    }
+
+    private String getVersion(MetacardType type) {
+        int hash = 17;
+        for (AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
+            // descriptors are a set, so combine them independently of iteration order
+            hash += (31 * String.valueOf(descriptor.getName()).hashCode()
+                    + String.valueOf(descriptor.getType().getAttributeFormat()).hashCode()) * 31
+                    + (descriptor.isIndexed() ? 1 : 0);
+        }
+        return Integer.toHexString(hash) + "-" + type.getAttributeDescriptors().size();
+    }
+
+    private JSONObject convertToJSON(MetacardType metacardType) {
+        JSONObject fields = new JSONObject();
+
+        for (AttributeDescriptor descriptor : metacardType.getAttributeDescriptors()) {
+            JSONObject description = new JSONObject();
+            description.put(FORMAT, descriptor.getType().getAttributeFormat().toString());
+            description.put(INDEXED, descriptor.isIndexed());
+
+            fields.put(descriptor.getName(), description);
+        }
+        return fields;
+    }
+
+    /**
+     * A serialized metacard type schema and its version.
+     */
+    public static class Schema {
+
+        private final MetacardType type;
+
+        private final String version;
+
+        private final JSONObject json;
+
+        Schema(MetacardType type, String version, JSONObject json) {
+            this.type = type;
+            this.version = version;
+            this.json = json;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public JSONObject getJson() {
+            return json;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The PushThrottle limits how often a search is pushed to its channel. A push that comes within
+ * the minimum interval of the previous one is held back; if more pushes arrive while it waits only
+ * the latest one runs, once the interval has passed. Pushes that must not wait, such as the final
+ * state of a search, run immediately and replace any push that is held back.
+ */
+public class PushThrottle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PushThrottle.class);
+
+    private final ConcurrentMap<String, State> states = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Executor executor;
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private volatile long minimumIntervalMillis;
+
+    /**
+     * Create a new PushThrottle
+     *
+     * @param scheduler
+     *            - wakes up held back pushes once their interval has passed
+     * @param executor
+     *            - runs the held back pushes, so they do not queue up behind each other on the
+     *            scheduler thread
+     * @param minimumIntervalMillis
+     *            - minimum time between two pushes of a search, 0 to never hold pushes back
+     */
+    public PushThrottle(ScheduledExecutorService scheduler, Executor executor,
+            long minimumIntervalMillis) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.minimumIntervalMillis = minimumIntervalMillis;
+    }
+
+    /**
+     * Runs a push now or holds it back until the minimum interval since the previous push of the
+     * same search has passed.
+     *
+     * @param key
+     *            - id of the search
+     * @param push
+     *            - performs the push. Held back pushes are expected to read the state of the search
+     *            when they run, so the latest state is sent.
+     * @param flush
+     *            - true to run the push immediately regardless of the interval
+     */
+    public void submit(String key, Runnable push, boolean flush) {
+        long interval = minimumIntervalMillis;
+        if (interval <= 0 && !states.containsKey(key)) {
+            push.run();
+            return;
+        }
+
+        final State state = getState(key);
+        Runnable now = null;
+        synchronized (state) {
+            long currentTime = System.currentTimeMillis();
+            long wait = state.lastPush + interval - currentTime;
+            if (flush || interval <= 0 || (wait <= 0 && state.scheduled == null)) {
+                if (state.scheduled != null) {
+                    state.scheduled.cancel(false);
+                    state.scheduled = null;
+                }
+                state.pending = null;
+                state.lastPush = currentTime;
+                now = push;
+            } else {
+                if (state.pending != null) {
+                    coalesced.incrementAndGet();
+                }
+                state.pending = push;
+                if (state.scheduled == null) {
+                    state.scheduled = scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            release(state);
+                        }
+                    }, Math.max(0, wait), TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        if (now != null) {
+            now.run();
+        }
+    }
+
+    /**
+     * Forgets a search, dropping any push that is held back for it.
+     */
+    public void remove(String key) {
+        State state = states.remove(key);
+        if (state != null) {
+            synchronized (state) {
+                if (state.scheduled != null) {
+                    state.scheduled.cancel(false);
+                    state.scheduled = null;
+                }
+                state.pending = null;
+            }
+        }
+    }
+
+    public void setMinimumInterval(long minimumIntervalMillis) {
+        this.minimumIntervalMillis = minimumIntervalMillis;
+    }
+
+    /**
+     * @return number of pushes skipped because a later push replaced them
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private State getState(String key) {
+        State state = states.get(key);
+        if (state == null) {
+            state = new State();
+            State existing = states.putIfAbsent(key, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    private void release(final State state) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Runnable push;
+                    synchronized (state) {
+                        push = state.pending;
+                        state.pending = null;
+                        state.scheduled = null;
+                        if (push != null) {
+                            state.lastPush = System.currentTimeMillis();
+                        }
+                    }
+                    if (push != null) {
+                        push.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Unable to run held back push.", e);
+            synchronized (state) {
+                state.pending = null;
+                state.scheduled = null;
+            }
+        }
+    }
+
+    private static class State {
+
+        private long lastPush;
+
+        private Runnable pending;
+
+        private ScheduledFuture<?> scheduled;
+    }
+}
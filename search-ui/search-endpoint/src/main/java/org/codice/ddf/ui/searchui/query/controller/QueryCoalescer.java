@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codice.ddf.ui.searchui.query.model.SearchRequest;
+
+import net.minidev.json.JSONObject;
+
+/**
+ * The QueryCoalescer lets identical searches that run at the same time share one federated
+ * execution. Searches are grouped on a key built from everything that affects their results; the
+ * first search of a group starts an execution under its own id, and every search of the group,
+ * including the first one, subscribes to it. Each subscriber is pushed the results of the
+ * execution on its own channel. The execution is cancelled once all of its subscribers are gone.
+ */
+public class QueryCoalescer {
+
+    private final Map<String, Group> groupsByKey = new HashMap<>();
+
+    private final Map<String, Group> groupsByExecution = new HashMap<>();
+
+    private final Map<String, Group> groupsBySubscriber = new HashMap<>();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Subscribes a search to the running execution of its group, or to a new execution if none is
+     * running.
+     *
+     * @param key
+     *            - key of the group of identical searches
+     * @param request
+     *            - the search
+     * @param sessionId
+     *            - ID of the client session that asked for the search, may be null
+     * @param execution
+     *            - the execution to start if the group has none
+     * @return the group, whose execution is the given execution if it still has to be started
+     */
+    public synchronized Group subscribe(String key, SearchRequest request, String sessionId,
+            SearchRequest execution) {
+        Group group = groupsByKey.get(key);
+        if (group == null) {
+            group = new Group(key, execution);
+            groupsByKey.put(key, group);
+            groupsByExecution.put(execution.getId(), group);
+        } else {
+            coalesced.incrementAndGet();
+        }
+
+        synchronized (group) {
+            group.subscribers.put(request.getId(), new Subscriber(request, sessionId));
+        }
+        groupsBySubscriber.put(request.getId(), group);
+        return group;
+    }
+
+    /**
+     * Removes a search from its group.
+     *
+     * @param searchId
+     *            - ID of the search
+     * @return the execution of the group if the search was its last subscriber and the execution
+     * should be cancelled, otherwise null
+     */
+    public synchronized SearchRequest unsubscribe(String searchId) {
+        Group group = groupsBySubscriber.remove(searchId);
+        if (group == null) {
+            return null;
+        }
+
+        synchronized (group) {
+            group.subscribers.remove(searchId);
+            if (!group.subscribers.isEmpty()) {
+                return null;
+            }
+        }
+        remove(group);
+        return group.execution;
+    }
+
+    /**
+     * @return the subscriber with the given search id, or null if the search is not coalesced
+     */
+    public synchronized Subscriber getSubscriber(String searchId) {
+        Group group = groupsBySubscriber.get(searchId);
+        if (group == null) {
+            return null;
+        }
+        synchronized (group) {
+            return group.subscribers.get(searchId);
+        }
+    }
+
+    /**
+     * @return the group of an execution, or null if the id is not that of a coalesced execution
+     */
+    public synchronized Group getGroup(String executionId) {
+        return groupsByExecution.get(executionId);
+    }
+
+    /**
+     * Forgets an execution that finished or was cancelled. Identical searches started afterwards
+     * get a new execution.
+     *
+     * @return the subscribers the execution still had
+     */
+    public synchronized List<Subscriber> finish(String executionId) {
+        Group group = groupsByExecution.get(executionId);
+        if (group == null) {
+            return Collections.emptyList();
+        }
+
+        remove(group);
+        List<Subscriber> subscribers;
+        synchronized (group) {
+            subscribers = new ArrayList<>(group.subscribers.values());
+        }
+        for (Subscriber subscriber : subscribers) {
+            groupsBySubscriber.remove(subscriber.request.getId(), group);
+        }
+        return subscribers;
+    }
+
+    /**
+     * @return number of searches that joined an execution started for an identical search
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public synchronized int size() {
+        return groupsByExecution.size();
+    }
+
+    private void remove(Group group) {
+        groupsByKey.remove(group.key, group);
+        groupsByExecution.remove(group.execution.getId(), group);
+    }
+
+    /**
+     * The searches sharing one execution. Hold the lock of the group while pushing to its
+     * subscribers, so a search that joins late is sent the last pushed state exactly once and in
+     * order with later pushes.
+     */
+    public static class Group {
+
+        private final String key;
+
+        private final SearchRequest execution;
+
+        private final Map<String, Subscriber> subscribers = new LinkedHashMap<>();
+
+        private JSONObject lastSnapshot;
+
+        Group(String key, SearchRequest execution) {
+            this.key = key;
+            this.execution = execution;
+        }
+
+        public SearchRequest getExecution() {
+            return execution;
+        }
+
+        /**
+         * @return the searches subscribed to the execution, the caller must hold the lock of the
+         * group
+         */
+        public List<SearchRequest> getSubscribers() {
+            List<SearchRequest> requests = new ArrayList<>(subscribers.size());
+            for (Subscriber subscriber : subscribers.values()) {
+                requests.add(subscriber.request);
+            }
+            return requests;
+        }
+
+        /**
+         * @return the last state pushed to the subscribers, or null if nothing was pushed yet. The
+         * caller must hold the lock of the group.
+         */
+        public JSONObject getLastSnapshot() {
+            return lastSnapshot;
+        }
+
+        public void setLastSnapshot(JSONObject lastSnapshot) {
+            this.lastSnapshot = lastSnapshot;
+        }
+    }
+
+    /**
+     * A search subscribed to the execution of its group.
+     */
+    public static class Subscriber {
+
+        private final SearchRequest request;
+
+        private final String sessionId;
+
+        Subscriber(SearchRequest request, String sessionId) {
+            this.request = request;
+            this.sessionId = sessionId;
+        }
+
+        public SearchRequest getRequest() {
+            return request;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The QueryScheduler runs the query tasks created by the {@link SearchController} on a bounded
+ * number of workers. Tasks that cannot run immediately are queued per user and per source and are
+ * handed out round-robin, first across users and then across each user's sources, so a single
+ * user or a single busy source cannot starve everyone else.
+ */
+public class QueryScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryScheduler.class);
+
+    private volatile ExecutorService executorService;
+
+    // users with queued tasks, in the order they will next be served
+    private final Deque<UserQueue> userRing = new ArrayDeque<>();
+
+    private final Map<String, UserQueue> userQueues = new HashMap<>();
+
+    private int maxConcurrentQueries;
+
+    private int maxQueuedQueries;
+
+    private int maxQueuedQueriesPerUser;
+
+    private int running = 0;
+
+    private int queued = 0;
+
+    private boolean shutdown = false;
+
+    /**
+     * Create a new QueryScheduler
+     *
+     * @param executorService
+     *            - ExecutorService that supplies the worker threads
+     * @param maxConcurrentQueries
+     *            - maximum number of tasks running at the same time
+     * @param maxQueuedQueries
+     *            - maximum number of tasks waiting to run
+     * @param maxQueuedQueriesPerUser
+     *            - maximum number of tasks a single user may have waiting to run
+     */
+    public QueryScheduler(ExecutorService executorService, int maxConcurrentQueries,
+            int maxQueuedQueries, int maxQueuedQueriesPerUser) {
+        this.executorService = executorService;
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.maxQueuedQueries = maxQueuedQueries;
+        this.maxQueuedQueriesPerUser = maxQueuedQueriesPerUser;
+    }
+
+    /**
+     * Queue a task to be run once a worker is available.
+     *
+     * @param userId
+     *            - user the task is run for
+     * @param sourceId
+     *            - source the task queries
+     * @param task
+     *            - the task to run
+     * @return a Future that can be used to cancel the task
+     * @throws RejectedExecutionException
+     *             if the scheduler has been shut down or the queue limits have been reached
+     */
+    public Future<?> submit(String userId, String sourceId, Runnable task) {
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        String userKey = String.valueOf(userId);
+
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Query scheduler has been shut down.");
+            }
+            if (queued >= maxQueuedQueries) {
+                throw new RejectedExecutionException(
+                        "Too many queued queries (" + queued + ").");
+            }
+
+            UserQueue userQueue = userQueues.get(userKey);
+            int userQueued = userQueue == null ? 0 : userQueue.size;
+            if (userQueued >= maxQueuedQueriesPerUser) {
+                throw new RejectedExecutionException(
+                        "Too many queued queries for user " + userKey + " (" + userQueued + ").");
+            }
+            if (userQueue == null) {
+                userQueue = new UserQueue(userKey);
+                userQueues.put(userKey, userQueue);
+                userRing.addLast(userQueue);
+            }
+
+            userQueue.add(String.valueOf(sourceId), future);
+            queued++;
+        }
+
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Stops accepting new tasks and discards the tasks that have not started yet.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            for (UserQueue userQueue : userQueues.values()) {
+                userQueue.cancelAll();
+            }
+            userQueues.clear();
+            userRing.clear();
+            queued = 0;
+        }
+    }
+
+    /**
+     * Takes a worker slot for work run outside of the scheduler, such as a hedged request to a
+     * source, if one is free. The slot must be given back with {@link #releaseSlot()}.
+     *
+     * @return true if a slot was taken
+     */
+    public synchronized boolean tryAcquireSlot() {
+        if (shutdown || running >= maxConcurrentQueries) {
+            return false;
+        }
+        running++;
+        return true;
+    }
+
+    /**
+     * Takes a worker slot even if none is free, for work that keeps a thread busy after the task
+     * that started it has given up on it. Queued tasks wait until the slot is given back with
+     * {@link #releaseSlot()}.
+     */
+    public synchronized void acquireSlot() {
+        running++;
+    }
+
+    public void releaseSlot() {
+        release();
+        dispatch();
+    }
+
+    public synchronized int getMaxConcurrentQueries() {
+        return maxConcurrentQueries;
+    }
+
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queued;
+    }
+
+    /**
+     * Replaces the ExecutorService that supplies the worker threads. Tasks that are already
+     * running finish on the previous ExecutorService.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+        synchronized (this) {
+            this.maxConcurrentQueries = maxConcurrentQueries;
+        }
+        dispatch();
+    }
+
+    public synchronized void setMaxQueuedQueries(int maxQueuedQueries) {
+        this.maxQueuedQueries = maxQueuedQueries;
+    }
+
+    public synchronized void setMaxQueuedQueriesPerUser(int maxQueuedQueriesPerUser) {
+        this.maxQueuedQueriesPerUser = maxQueuedQueriesPerUser;
+    }
+
+    private void dispatch() {
+        Worker worker;
+        while ((worker = nextWorker()) != null) {
+            try {
+                executorService.submit(worker);
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Unable to run query task.", e);
+                worker.task.cancel(false);
+                release();
+            }
+        }
+    }
+
+    private synchronized Worker nextWorker() {
+        if (running >= maxConcurrentQueries || userRing.isEmpty()) {
+            return null;
+        }
+
+        UserQueue userQueue = userRing.pollFirst();
+        FutureTask<?> task = userQueue.poll();
+        if (userQueue.size == 0) {
+            userQueues.remove(userQueue.userId);
+        } else {
+            userRing.addLast(userQueue);
+        }
+
+        queued--;
+        running++;
+        return new Worker(task);
+    }
+
+    private synchronized void release() {
+        running--;
+    }
+
+    private class Worker implements Runnable {
+
+        private final FutureTask<?> task;
+
+        Worker(FutureTask<?> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                release();
+                dispatch();
+            }
+        }
+    }
+
+    private static class UserQueue {
+
+        private final String userId;
+
+        // sources with queued tasks, in the order they will next be served
+        private final Deque<String> sourceRing = new ArrayDeque<>();
+
+        private final Map<String, Deque<FutureTask<?>>> sourceQueues = new HashMap<>();
+
+        private int size = 0;
+
+        UserQueue(String userId) {
+            this.userId = userId;
+        }
+
+        void add(String sourceId, FutureTask<?> task) {
+            Deque<FutureTask<?>> sourceQueue = sourceQueues.get(sourceId);
+            if (sourceQueue == null) {
+                sourceQueue = new ArrayDeque<>();
+                sourceQueues.put(sourceId, sourceQueue);
+                sourceRing.addLast(sourceId);
+            }
+            sourceQueue.addLast(task);
+            size++;
+        }
+
+        FutureTask<?> poll() {
+            String sourceId = sourceRing.pollFirst();
+            Deque<FutureTask<?>> sourceQueue = sourceQueues.get(sourceId);
+            FutureTask<?> task = sourceQueue.pollFirst();
+            if (sourceQueue.isEmpty()) {
+                sourceQueues.remove(sourceId);
+            } else {
+                sourceRing.addLast(sourceId);
+            }
+            size--;
+            return task;
+        }
+
+        void cancelAll() {
+            for (Deque<FutureTask<?>> sourceQueue : sourceQueues.values()) {
+                for (FutureTask<?> task : sourceQueue) {
+                    task.cancel(false);
+                }
+            }
+            sourceQueues.clear();
+            sourceRing.clear();
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+
+/**
+ * The ResultDeduplicator recognizes copies of the same product returned by several sources. Results
+ * are keyed on the metacard id or on a configurable attribute such as a checksum. Only a 64-bit
+ * hash of each key is remembered, in a compact open-addressing set, and the number of copies
+ * collapsed is counted per source.
+ */
+public class ResultDeduplicator {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final String attribute;
+
+    private final LongHashSet seenKeys = new LongHashSet();
+
+    private final Map<String, Long> duplicateCounts = new HashMap<>();
+
+    /**
+     * Create a new ResultDeduplicator
+     *
+     * @param attribute
+     *            - name of the attribute identifying a product, the metacard id if blank
+     */
+    public ResultDeduplicator(String attribute) {
+        this.attribute = StringUtils.isBlank(attribute) ? Metacard.ID : attribute;
+    }
+
+    /**
+     * @param result
+     *            - a result
+     * @return the hashed key of the result, or null if the result has no value for the attribute
+     * and cannot be matched with other results
+     */
+    public Long getKey(Result result) {
+        Metacard metacard = result.getMetacard();
+        if (metacard == null) {
+            return null;
+        }
+
+        Serializable value;
+        if (Metacard.ID.equals(attribute)) {
+            value = metacard.getId();
+        } else {
+            Attribute attr = metacard.getAttribute(attribute);
+            value = attr == null ? null : attr.getValue();
+        }
+
+        if (value == null) {
+            return null;
+        } else if (value instanceof byte[]) {
+            return HASH_FUNCTION.hashBytes((byte[]) value).asLong();
+        }
+        return HASH_FUNCTION.hashString(value.toString(), StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * Remembers a key.
+     *
+     * @return true if the key was seen before
+     */
+    public synchronized boolean markSeen(long key) {
+        return !seenKeys.add(key);
+    }
+
+    /**
+     * Counts a copy that was collapsed into another copy of the same product.
+     *
+     * @param result
+     *            - the copy that was dropped
+     */
+    public synchronized void recordDuplicate(Result result) {
+        String sourceId = result.getMetacard().getSourceId();
+        Long count = duplicateCounts.get(sourceId);
+        duplicateCounts.put(sourceId, count == null ? 1L : count + 1);
+    }
+
+    /**
+     * @return number of collapsed copies per source id
+     */
+    public synchronized Map<String, Long> getDuplicateCounts() {
+        return new HashMap<>(duplicateCounts);
+    }
+
+    /**
+     * Removes the copies of the same product from a list of results, keeping the highest ranked
+     * copy in the position of the first copy.
+     *
+     * @param results
+     *            - the results
+     * @param comparator
+     *            - ranking of the results
+     * @return the results without duplicates
+     */
+    public List<Result> deduplicate(List<Result> results, Comparator<Result> comparator) {
+        List<Result> unique = new ArrayList<>(results.size());
+        Map<Long, Integer> positions = new HashMap<>();
+
+        for (Result result : results) {
+            Long key = getKey(result);
+            if (key == null) {
+                unique.add(result);
+                continue;
+            }
+
+            markSeen(key);
+            Integer position = positions.get(key);
+            if (position == null) {
+                positions.put(key, unique.size());
+                unique.add(result);
+            } else if (comparator != null
+                    && comparator.compare(result, unique.get(position)) < 0) {
+                recordDuplicate(unique.get(position));
+                unique.set(position, result);
+            } else {
+                recordDuplicate(result);
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * A set of longs using open addressing, without boxing each value.
+     */
+    static class LongHashSet {
+
+        private static final float LOAD_FACTOR = 0.5f;
+
+        private long[] table = new long[16];
+
+        // 0 marks an empty slot, so it is tracked separately
+        private boolean containsZero = false;
+
+        private int size = 0;
+
+        /**
+         * @return true if the value was not in the set yet
+         */
+        boolean add(long value) {
+            if (value == 0) {
+                boolean added = !containsZero;
+                containsZero = true;
+                if (added) {
+                    size++;
+                }
+                return added;
+            }
+
+            if (size + 1 > table.length * LOAD_FACTOR) {
+                resize();
+            }
+            if (insert(table, value)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+
+        boolean contains(long value) {
+            if (value == 0) {
+                return containsZero;
+            }
+
+            int mask = table.length - 1;
+            int index = mix(value) & mask;
+            while (table[index] != 0) {
+                if (table[index] == value) {
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] newTable = new long[table.length * 2];
+            for (long value : table) {
+                if (value != 0) {
+                    insert(newTable, value);
+                }
+            }
+            table = newTable;
+        }
+
+        private static boolean insert(long[] table, long value) {
+            int mask = table.length - 1;
+            int index = mix(value) & mask;
+            while (table[index] != 0) {
+                if (table[index] == value) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = value;
+            return true;
+        }
+
+        private static int mix(long value) {
+            return (int) (value ^ (value >>> 32)) * 0x9E3779B9;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import ddf.catalog.data.Result;
+
+/**
+ * The ResultMerger merges the results returned by each source of a search into a single sorted
+ * view that never holds more than a page of results. Each source response is sorted once and then
+ * merged into the page, so adding a response of k results costs O(k log K) for a page size of K
+ * regardless of how many results the other sources returned. When a {@link ResultDeduplicator}
+ * is given, only the highest ranked copy of a product returned by several sources is kept.
+ */
+public class ResultMerger {
+
+    private final Comparator<Result> comparator;
+
+    private final int maxResults;
+
+    private final TreeSet<Entry> topResults;
+
+    private final ResultDeduplicator deduplicator;
+
+    // the entries in topResults that have a deduplication key
+    private final Map<Long, Entry> keyedResults = new HashMap<>();
+
+    // breaks ties between results the comparator ranks equally, first come first served
+    private long sequence = 0;
+
+    /**
+     * Create a new ResultMerger
+     *
+     * @param comparator
+     *            - ordering of the merged results
+     * @param maxResults
+     *            - maximum number of results to keep
+     */
+    public ResultMerger(final Comparator<Result> comparator, int maxResults) {
+        this(comparator, maxResults, null);
+    }
+
+    /**
+     * Create a new ResultMerger that collapses copies of the same product
+     *
+     * @param comparator
+     *            - ordering of the merged results
+     * @param maxResults
+     *            - maximum number of results to keep
+     * @param deduplicator
+     *            - recognizes copies of the same product, null to keep every copy
+     */
+    public ResultMerger(final Comparator<Result> comparator, int maxResults,
+            ResultDeduplicator deduplicator) {
+        this.comparator = comparator;
+        this.maxResults = maxResults;
+        this.deduplicator = deduplicator;
+        this.topResults = new TreeSet<>(new Comparator<Entry>() {
+            @Override
+            public int compare(Entry left, Entry right) {
+                int result = comparator.compare(left.result, right.result);
+                if (result == 0) {
+                    result = Long.compare(left.sequence, right.sequence);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Merges the results of one source into the merged view.
+     *
+     * @param sourceResults
+     *            - results returned by a single source
+     * @return the merged results in sorted order
+     */
+    public synchronized List<Result> merge(List<Result> sourceResults) {
+        if (sourceResults != null && !sourceResults.isEmpty()) {
+            List<Result> sorted = new ArrayList<>(sourceResults);
+            Collections.sort(sorted, comparator);
+
+            for (Result result : sorted) {
+                if (!offer(result)) {
+                    // the rest of this source's results rank even lower
+                    break;
+                }
+            }
+        }
+        return getResults();
+    }
+
+    /**
+     * @return the merged results in sorted order
+     */
+    public synchronized List<Result> getResults() {
+        List<Result> results = new ArrayList<>(topResults.size());
+        for (Entry entry : topResults) {
+            results.add(entry.result);
+        }
+        return results;
+    }
+
+    public synchronized int size() {
+        return topResults.size();
+    }
+
+    /**
+     * @return false if the result ranks too low to be kept, so the lower ranked results of the
+     * same source do not need to be offered
+     */
+    private boolean offer(Result result) {
+        if (maxResults <= 0) {
+            return false;
+        }
+
+        Long key = deduplicator == null ? null : deduplicator.getKey(result);
+        if (key != null && deduplicator.markSeen(key)) {
+            Entry existing = keyedResults.get(key);
+            if (existing == null) {
+                // the other copy did not make the page, this one competes on its own rank
+                deduplicator.recordDuplicate(result);
+            } else if (comparator.compare(result, existing.result) >= 0) {
+                deduplicator.recordDuplicate(result);
+                return true;
+            } else {
+                // this copy ranks higher, it replaces the other one
+                deduplicator.recordDuplicate(existing.result);
+                topResults.remove(existing);
+                keyedResults.remove(key);
+            }
+        }
+
+        if (topResults.size() >= maxResults) {
+            if (comparator.compare(result, topResults.last().result) >= 0) {
+                return false;
+            }
+            Entry dropped = topResults.pollLast();
+            if (dropped.key != null) {
+                keyedResults.remove(dropped.key);
+            }
+        }
+
+        Entry entry = new Entry(result, key, sequence++);
+        topResults.add(entry);
+        if (key != null) {
+            keyedResults.put(key, entry);
+        }
+        return true;
+    }
+
+    private static class Entry {
+
+        private final Result result;
+
+        private final Long key;
+
+        private final long sequence;
+
+        Entry(Result result, Long key, long sequence) {
+            this.result = result;
+            this.key = key;
+            this.sequence = sequence;
+        }
+    }
+}
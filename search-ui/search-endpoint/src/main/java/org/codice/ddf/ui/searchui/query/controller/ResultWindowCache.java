@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codice.ddf.ui.searchui.query.model.Search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * The ResultWindowCache keeps the merged and sorted results of finished searches that fetched
+ * several pages at once, so requests for the other pages of the same window can be answered
+ * without querying the sources again. Windows expire a fixed time after they were stored, so the
+ * pages served from them are never older than that.
+ */
+public class ResultWindowCache {
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile Cache<String, Search> cache;
+
+    /**
+     * Create a new ResultWindowCache
+     *
+     * @param maxBytes
+     *            - estimated maximum memory used by the windows
+     * @param timeToLiveMillis
+     *            - time after which a window expires
+     */
+    public ResultWindowCache(long maxBytes, long timeToLiveMillis) {
+        configure(maxBytes, timeToLiveMillis);
+    }
+
+    /**
+     * Changes the bounds of the cache, dropping the windows it holds.
+     */
+    public final synchronized void configure(long maxBytes, long timeToLiveMillis) {
+        cache = CacheBuilder.newBuilder().maximumWeight(Math.max(1, maxBytes))
+                .expireAfterWrite(Math.max(1, timeToLiveMillis), TimeUnit.MILLISECONDS)
+                .weigher(new Weigher<String, Search>() {
+                    @Override
+                    public int weigh(String key, Search search) {
+                        return (int) Math.min(Integer.MAX_VALUE, search.estimateSize());
+                    }
+                }).build();
+    }
+
+    /**
+     * @param key
+     *            - key of the window
+     * @return the finished search holding the results of the window, or null if it is not cached
+     */
+    public Search get(String key) {
+        Search search = cache.getIfPresent(key);
+        if (search == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return search;
+    }
+
+    public void put(String key, Search search) {
+        cache.put(key, search);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return number of page requests answered from a window
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
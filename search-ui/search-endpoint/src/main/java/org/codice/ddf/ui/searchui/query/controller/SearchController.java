@@ -22,19 +22,40 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.collections.map.LRUMap;
 import org.apache.commons.lang.StringUtils;
+import org.codice.ddf.ui.searchui.query.model.ClusterAggregator;
+import org.codice.ddf.ui.searchui.query.model.Facets;
 import org.codice.ddf.ui.searchui.query.model.QueryStatus;
 import org.codice.ddf.ui.searchui.query.model.Search;
 import org.codice.ddf.ui.searchui.query.model.SearchRequest;
 import org.cometd.bayeux.server.BayeuxServer;
-import org.cometd.bayeux.server.ConfigurableServerChannel;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
 import org.cometd.server.ServerMessageImpl;
+import org.geotools.filter.text.ecql.ECQL;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -44,22 +65,23 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Ordering;
+import com.google.common.collect.ImmutableSet;
 
 import ddf.action.Action;
 import ddf.action.ActionRegistry;
 import ddf.catalog.CatalogFramework;
 import ddf.catalog.data.Attribute;
-import ddf.catalog.data.AttributeDescriptor;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.MetacardType;
 import ddf.catalog.data.Result;
 import ddf.catalog.federation.FederationException;
+import ddf.catalog.operation.ProcessingDetails;
 import ddf.catalog.operation.Query;
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.QueryResponse;
 import ddf.catalog.operation.SourceResponse;
 import ddf.catalog.operation.impl.ProcessingDetailsImpl;
+import ddf.catalog.operation.impl.QueryImpl;
 import ddf.catalog.operation.impl.QueryRequestImpl;
 import ddf.catalog.operation.impl.QueryResponseImpl;
 import ddf.catalog.source.SourceUnavailableException;
@@ -71,6 +93,7 @@
 import ddf.catalog.util.impl.TemporalResultComparator;
 import ddf.security.SecurityConstants;
 import ddf.security.Subject;
+import ddf.security.assertion.SecurityAssertion;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 
@@ -100,10 +123,141 @@ public class SearchController {
                 }
             });
 
+    private static final int DEFAULT_MAX_CONCURRENT_QUERIES = 64;
+
+    private static final int DEFAULT_MAX_QUEUED_QUERIES = 10000;
+
+    private static final int DEFAULT_MAX_QUEUED_QUERIES_PER_USER = 1000;
+
+    private static final String CACHE_SOURCE_ID = "cache";
+
+    private static final String COALESCED_SEARCH_PREFIX = "coalesced-";
+
+    private static final int DEFAULT_METACARD_JSON_CACHE_SIZE = 10000;
+
+    private static final int DEFAULT_METACARD_JSON_CACHE_MEGABYTES = 64;
+
+    private static final int DEFAULT_FILTER_CACHE_SIZE = 1000;
+
+    private static final long DEFAULT_SOURCE_STATUS_REFRESH_INTERVAL = 30000;
+
+    private static final long DEFAULT_SOURCE_STATUS_MAX_AGE = 120000;
+
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
+    private static final int DEFAULT_SEARCH_STORE_SIZE = 1000;
+
+    private static final int DEFAULT_SEARCH_STORE_MEGABYTES = 256;
+
+    private static final int DEFAULT_SEARCH_STORE_TTL_MINUTES = 30;
+
+    private static final int LATENCY_WINDOW_SIZE = 100;
+
+    private static final int LATENCY_MINIMUM_SAMPLES = 10;
+
+    private static final double DEFAULT_SOURCE_DEADLINE_MULTIPLIER = 3.0;
+
+    private static final long DEFAULT_MINIMUM_SOURCE_DEADLINE_MILLIS = 5000;
+
+    // extra time given to a source past its deadline to return its partial results
+    private static final long DEADLINE_GRACE_MILLIS = 1000;
+
+    private static final int DEFAULT_RESULT_WINDOW_MEGABYTES = 64;
+
+    private static final int DEFAULT_RESULT_CHUNK_SIZE = 100;
+
+    private static final int DEFAULT_CLUSTER_MAX_RESULTS = 10000;
+
+    private static final int DEFAULT_RESULT_WINDOW_TTL_SECONDS = 300;
+
+    // geometries with fewer positions are sent as they are
+    private static final int MIN_SIMPLIFIED_POSITIONS = 32;
+
+    // deadline of the query fetching a single metacard
+    private static final long METACARD_FETCH_TIMEOUT_MILLIS = 10000;
+
+    // attributes sent with every result, whichever fields the client asks for
+    private static final Set<String> PROJECTION_ATTRIBUTES = ImmutableSet
+            .of(Search.ID, Facets.SOURCE_ID, Facets.METACARD_TYPE);
+
     private final ExecutorService executorService = getExecutorService();
 
-    // TODO: just store the searches in memory for now, change this later
-    private final Map<String, Search> searchMap = Collections.synchronizedMap(new LRUMap(1000));
+    private final QueryScheduler queryScheduler = new QueryScheduler(executorService,
+            DEFAULT_MAX_CONCURRENT_QUERIES, DEFAULT_MAX_QUEUED_QUERIES,
+            DEFAULT_MAX_QUEUED_QUERIES_PER_USER);
+
+    private SearchStore searchStore = new CachingSearchStore(DEFAULT_SEARCH_STORE_SIZE,
+            DEFAULT_SEARCH_STORE_MEGABYTES * BYTES_PER_MEGABYTE,
+            TimeUnit.MINUTES.toMillis(DEFAULT_SEARCH_STORE_TTL_MINUTES));
+
+    private final ConcurrentMap<String, DeltaEncoder> deltaEncoders = new ConcurrentHashMap<>();
+
+    private final ChannelPublisher channelPublisher = new ChannelPublisher();
+
+    private final ScheduledExecutorService pushScheduler = Executors
+            .newSingleThreadScheduledExecutor();
+
+    // held back pushes run on threads of their own, outside the query workers and their limits
+    private final ExecutorService pushExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final PushThrottle pushThrottle = new PushThrottle(pushScheduler, pushExecutor, 0);
+
+    // collecting the status of federated sources can be slow, so it has a thread of its own
+    private final ScheduledExecutorService sourceStatusScheduler = Executors
+            .newSingleThreadScheduledExecutor();
+
+    private final ConcurrentMap<String, ActiveSearch> activeSearches = new ConcurrentHashMap<>();
+
+    // ids of the searches started by each client session
+    private final ConcurrentMap<String, Set<String>> sessionSearches = new ConcurrentHashMap<>();
+
+    private final QueryCoalescer queryCoalescer = new QueryCoalescer();
+
+    private final ResultWindowCache resultWindows = new ResultWindowCache(
+            DEFAULT_RESULT_WINDOW_MEGABYTES * BYTES_PER_MEGABYTE,
+            TimeUnit.SECONDS.toMillis(DEFAULT_RESULT_WINDOW_TTL_SECONDS));
+
+    private final MetacardTypeRegistry metacardTypeRegistry = new MetacardTypeRegistry();
+
+    private final MetacardJsonCache metacardJsonCache = new MetacardJsonCache(
+            DEFAULT_METACARD_JSON_CACHE_SIZE,
+            DEFAULT_METACARD_JSON_CACHE_MEGABYTES * BYTES_PER_MEGABYTE);
+
+    private final FilterCache filterCache = new FilterCache(DEFAULT_FILTER_CACHE_SIZE);
+
+    private final SourceLatencyTracker latencyTracker = new SourceLatencyTracker(
+            LATENCY_WINDOW_SIZE, LATENCY_MINIMUM_SAMPLES);
+
+    private volatile ExecutorService sourceQueryExecutor;
+
+    // runs query tasks on virtual threads when enabled and supported, null otherwise
+    private ExecutorService virtualThreadExecutor;
+
+    private boolean adaptiveSourceDeadlines = false;
+
+    private double sourceDeadlineMultiplier = DEFAULT_SOURCE_DEADLINE_MULTIPLIER;
+
+    private long minimumSourceDeadlineMillis = DEFAULT_MINIMUM_SOURCE_DEADLINE_MILLIS;
+
+    private boolean hedgedQueries = false;
+
+    private long cacheRequeryDelay = 0;
+
+    private boolean deduplicateResults = false;
+
+    private String deduplicationAttribute = Metacard.ID;
+
+    private boolean coalesceQueries = false;
+
+    private int resultWindowPages = 0;
+
+    private int resultChunkSize = DEFAULT_RESULT_CHUNK_SIZE;
+
+    private volatile int clusterMaxResults = DEFAULT_CLUSTER_MAX_RESULTS;
+
+    // orders the streamed updates of a search, chunks of an older update are dropped by clients
+    private final AtomicLong streamSequence = new AtomicLong();
 
     private Boolean cacheDisabled = false;
 
@@ -111,7 +265,7 @@ public class SearchController {
 
     private ActionRegistry actionRegistry;
 
-    private BayeuxServer bayeuxServer;
+    private final SourceAvailability sourceAvailability;
 
     /**
      * Create a new SearchController
@@ -122,6 +276,9 @@ public class SearchController {
     public SearchController(CatalogFramework framework, ActionRegistry actionRegistry) {
         this.framework = framework;
         this.actionRegistry = actionRegistry;
+        this.sourceAvailability = new SourceAvailability(framework, sourceStatusScheduler,
+                DEFAULT_SOURCE_STATUS_REFRESH_INTERVAL, DEFAULT_SOURCE_STATUS_MAX_AGE);
+        searchStore.setEvictionListener(new SearchEvictionListener());
     }
 
     private static void addObject(JSONObject obj, String name, Object value) {
@@ -150,7 +307,19 @@ private static void addObject(JSONObject obj, String name, Object value) {
      * Destroys this controller. This controller may not be used again after this method is called.
      */
     public void destroy() {
+        queryScheduler.shutdown();
+        pushScheduler.shutdownNow();
+        pushExecutor.shutdown();
+        sourceStatusScheduler.shutdownNow();
         executorService.shutdown();
+        if (sourceQueryExecutor != null) {
+            sourceQueryExecutor.shutdownNow();
+        }
+        synchronized (this) {
+            if (virtualThreadExecutor != null) {
+                virtualThreadExecutor.shutdownNow();
+            }
+        }
     }
 
     /**
@@ -159,395 +328,2049 @@ public void destroy() {
      * @param jsonData
      * @param serverSession
      */
-    public synchronized void pushResults(String channel, JSONObject jsonData,
+    public void pushResults(String channel, JSONObject jsonData, ServerSession serverSession) {
+        channelPublisher.publish(getChannelName(channel), createReply(jsonData), false,
+                serverSession);
+    }
+
+    /**
+     * Push the current state of a search to its channel. Clients that asked for delta updates are
+     * sent only what changed since the previous push.
+     *
+     * @param search - Search to push
+     * @param request - SearchRequest the search was created for
+     * @param serverSession - Cometd ServerSession
+     * @throws CatalogTransformerException
+     */
+    public void pushSearch(Search search, SearchRequest request, ServerSession serverSession)
+            throws CatalogTransformerException {
+        QueryCoalescer.Group group = queryCoalescer.getGroup(request.getId());
+        if (request.isStreamResults()) {
+            if (group == null) {
+                pushStreamed(search, request, serverSession);
+                return;
+            }
+            synchronized (group) {
+                for (SearchRequest subscriber : group.getSubscribers()) {
+                    pushStreamed(search, subscriber, serverSession);
+                }
+            }
+            return;
+        }
+
+        JSONObject snapshot = transform(search, request);
+        if (group == null) {
+            publishSnapshot(request, snapshot, serverSession);
+            return;
+        }
+
+        synchronized (group) {
+            group.setLastSnapshot(snapshot);
+            for (SearchRequest subscriber : group.getSubscribers()) {
+                publishSnapshot(subscriber, withId(snapshot, subscriber.getId()), serverSession);
+            }
+        }
+    }
+
+    private void publishSnapshot(SearchRequest request, JSONObject snapshot,
             ServerSession serverSession) {
-        String channelName;
+        String channelName = getChannelName(request.getId());
+        if (!request.isDeltaUpdates()) {
+            // a full snapshot makes any older one still waiting to be published obsolete
+            channelPublisher.publish(channelName, createReply(request, snapshot), true,
+                    serverSession);
+            return;
+        }
+
+        DeltaEncoder encoder = getDeltaEncoder(request.getId());
+        // encode and queue together so messages leave in sequence order
+        synchronized (encoder) {
+            channelPublisher.enqueue(channelName, createReply(request, encoder.encode(snapshot)),
+                    false, serverSession);
+        }
+        channelPublisher.drain(channelName);
+    }
+
+    /**
+     * Pushes a search, or holds the push back if the search was pushed less than the minimum push
+     * interval ago. Held back pushes transform the search when they run, so only its latest state
+     * is sent. The final state of a search and source failures are pushed right away.
+     */
+    private void requestPush(final Search search, final SearchRequest request,
+            final ServerSession session, boolean flush) {
+        pushThrottle.submit(request.getId(), new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled()) {
+                    return;
+                }
+                try {
+                    pushSearch(search, request, session);
+                } catch (CatalogTransformerException e) {
+                    LOGGER.error("Failed to transform search results of {}.", request.getId(), e);
+                }
+            }
+        }, flush || search.isFinished());
+    }
+
+    /**
+     * Pushes the current state of a search as a stream of messages that each hold at most the
+     * configured number of results. Every message carries the hits and the metacard types of its
+     * own results; the last one also carries the status of the sources. Results are transformed
+     * one chunk at a time, so the memory used does not grow with the page size and the first
+     * results go out before the last ones are transformed.
+     *
+     * @param search - Search to push
+     * @param request - SearchRequest of the channel to push on
+     * @param serverSession - Cometd ServerSession
+     * @throws CatalogTransformerException
+     */
+    private void pushStreamed(Search search, SearchRequest request, ServerSession serverSession)
+            throws CatalogTransformerException {
+        long sequence;
+        long hits;
+        List<Result> results;
+        JSONArray status;
+        JSONArray clusters = null;
+        JSONObject facets = null;
+        synchronized (search) {
+            SourceResponse upstreamResponse = search.getCompositeQueryResponse();
+            if (upstreamResponse == null) {
+                throw new CatalogTransformerException(
+                        "Cannot transform null " + SourceResponse.class.getName());
+            }
+            sequence = streamSequence.incrementAndGet();
+            hits = search.getHits();
+            results = new ArrayList<>(
+                    getRequestedResults(upstreamResponse.getResults(), request));
+            status = getQueryStatus(search.getQueryStatus());
+            if (request.getClusterCellSize() > 0) {
+                clusters = getClusters(search, upstreamResponse.getResults(),
+                        request.getClusterCellSize());
+            }
+            facets = getFacets(search, upstreamResponse.getResults());
+        }
+
+        String channelName = getChannelName(request.getId());
+        int chunkSize = Math.max(1, resultChunkSize);
+        int chunks = Math.max(1, (results.size() + chunkSize - 1) / chunkSize);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = chunk * chunkSize;
+            int to = Math.min(results.size(), from + chunkSize);
+            Map<String, MetacardType> metaTypes = new HashMap<String, MetacardType>();
+
+            JSONObject message = new JSONObject();
+            addObject(message, Search.ID, request.getId());
+            addObject(message, Search.HITS, hits);
+            addObject(message, Search.RESULTS,
+                    getResultList(results.subList(from, to), metaTypes, request));
+            if (request.isMetacardTypeReferences()) {
+                addObject(message, Search.METACARD_TYPE_VERSIONS,
+                        getMetacardTypeVersions(metaTypes.values()));
+            } else {
+                addObject(message, Search.METACARD_TYPES, getMetacardTypes(metaTypes.values()));
+            }
+            addObject(message, Search.STREAM, sequence);
+            addObject(message, Search.CHUNK, chunk);
+            addObject(message, Search.CHUNKS, chunks);
+            addObject(message, Search.OFFSET, from);
+            if (chunk == chunks - 1) {
+                addObject(message, Search.STATUS, status);
+                addObject(message, Search.CLUSTERS, clusters);
+                addObject(message, Search.FACETS, facets);
+            }
+
+            channelPublisher.publish(channelName, createReply(request, message), false,
+                    serverSession);
+        }
+    }
+
+    private JSONObject withId(JSONObject snapshot, String searchId) {
+        JSONObject copy = new JSONObject(snapshot);
+        copy.put(Search.ID, searchId);
+        return copy;
+    }
+
+    private String getChannelName(String channel) {
         //you can't have 2 leading slashes, but if there isn't one, add it
         if (channel.startsWith("/")) {
-            channelName = channel;
-        } else {
-            channelName = "/" + channel;
+            return channel;
         }
+        return "/" + channel;
+    }
 
-        LOGGER.debug("Creating channel if it doesn't exist: {}", channelName);
-
-        bayeuxServer
-                .createChannelIfAbsent(channelName, new ConfigurableServerChannel.Initializer() {
-                    public void configureChannel(ConfigurableServerChannel channel) {
-                        channel.setPersistent(true);
-                    }
-                });
+    private ServerMessage.Mutable createReply(SearchRequest request, JSONObject jsonData) {
+        if (request.isDictionaryEncoding()) {
+            return createReply(DictionaryEncoder.encode(jsonData));
+        }
+        return createReply(jsonData);
+    }
 
+    private ServerMessage.Mutable createReply(JSONObject jsonData) {
         ServerMessage.Mutable reply = new ServerMessageImpl();
         reply.put(Search.SUCCESSFUL, true);
         reply.putAll(jsonData);
+        return reply;
+    }
+
+    /**
+     * Deliver the last published state of a delta search to a single client, for example after it
+     * (re)subscribed to the search channel or noticed a gap in the sequence numbers.
+     *
+     * @param searchId - ID of the search
+     * @param remote - Client session to deliver the snapshot to
+     * @param serverSession - Cometd ServerSession sending the snapshot
+     */
+    public void pushSnapshot(String searchId, ServerSession remote, ServerSession serverSession) {
+        DeltaEncoder encoder = deltaEncoders.get(searchId);
+        if (encoder == null) {
+            LOGGER.debug("No delta state for search {}, nothing to resend.", searchId);
+            return;
+        }
+
+        JSONObject snapshot = encoder.snapshot();
+        if (snapshot != null) {
+            JSONObject reply = new JSONObject();
+            reply.put(Search.SUCCESSFUL, true);
+            reply.putAll(snapshot);
 
-        LOGGER.debug("Sending results to subscribers on: {}", channelName);
+            LOGGER.debug("Sending snapshot of search {} to {}", searchId, remote.getId());
+            remote.deliver(serverSession, "/" + searchId, reply, null);
+        }
+    }
 
-        bayeuxServer.getChannel(channelName).publish(serverSession, reply, null);
+    private DeltaEncoder getDeltaEncoder(String searchId) {
+        DeltaEncoder encoder = deltaEncoders.get(searchId);
+        if (encoder == null) {
+            encoder = new DeltaEncoder();
+            DeltaEncoder existing = deltaEncoders.putIfAbsent(searchId, encoder);
+            if (existing != null) {
+                encoder = existing;
+            }
+        }
+        return encoder;
     }
 
     /**
-     * Execute all of the queries contained within the SearchRequest
+     * Cancels a search on behalf of a client session. Source queries that are still queued are
+     * dropped, running ones are interrupted, and nothing more is pushed for the search. Searches
+     * started by other sessions are left alone.
      *
-     * @param request
-     *            - SearchRequest containing a query for 1 or more sources
-     * @param session
-     *            - Cometd ServerSession
+     * @param searchId
+     *            - ID of the search
+     * @param sessionId
+     *            - ID of the client session asking for the cancellation
+     * @return true if the search was still running
      */
-    public void executeQuery(final SearchRequest request, final ServerSession session,
-            final Subject subject) {
+    public boolean cancelSearch(String searchId, String sessionId) {
+        if (!isOwnedBy(searchId, sessionId)) {
+            LOGGER.warn("Session {} cannot cancel search {} of another session.", sessionId,
+                    searchId);
+            return false;
+        }
+        return cancelSearch(searchId);
+    }
 
-        final SearchController controller = this;
+    /**
+     * @return true if no search uses the ID or the search using it was started by the given
+     *         client session
+     */
+    private boolean isOwnedBy(String searchId, String sessionId) {
+        QueryCoalescer.Subscriber subscriber = queryCoalescer.getSubscriber(searchId);
+        if (subscriber != null) {
+            return StringUtils.equals(sessionId, subscriber.getSessionId());
+        }
+        ActiveSearch activeSearch = activeSearches.get(searchId);
+        return activeSearch == null || StringUtils.equals(sessionId, activeSearch.sessionId);
+    }
 
-        if (!cacheDisabled) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    // check if there are any currently cached results
-                    // search cache for all sources
-                    QueryResponse response = executeQuery(null, request, subject,
-                            new HashMap<>(CACHE_PROPERTIES));
+    private boolean cancelSearch(String searchId) {
+        QueryCoalescer.Subscriber subscriber = queryCoalescer.getSubscriber(searchId);
+        if (subscriber != null) {
+            LOGGER.debug("Unsubscribing search {} from its coalesced execution", searchId);
+            SearchRequest abandoned = queryCoalescer.unsubscribe(searchId);
+            untrackSession(subscriber.getSessionId(), searchId);
+            deltaEncoders.remove(searchId);
+            channelPublisher.remove(getChannelName(searchId));
+            if (abandoned != null) {
+                // nobody is waiting for the results anymore
+                cancelSearch(abandoned.getId());
+            }
+            return true;
+        }
 
-                    try {
-                        Search search = addQueryResponseToSearch(request, response);
-                        pushResults(request.getId(), controller.transform(search, request),
-                                session);
-                    } catch (InterruptedException e) {
-                        LOGGER.error("Failed adding cached search results.", e);
-                    } catch (CatalogTransformerException e) {
-                        LOGGER.error("Failed to transform cached search results.", e);
-                    }
-                }
-            });
+        ActiveSearch activeSearch = activeSearches.remove(searchId);
+        if (activeSearch == null) {
+            return false;
+        }
 
-            for (final String sourceId : request.getSourceIds()) {
-                LOGGER.debug("Executing async query on: {}", sourceId);
-                executorService.submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        // update index from federated sources
-                        QueryResponse indexResponse = executeQuery(sourceId, request, subject,
-                                new HashMap<>(INDEX_PROPERTIES));
+        LOGGER.debug("Cancelling search {}", searchId);
+        activeSearch.cancel();
+        untrackSession(activeSearch.sessionId, searchId);
+        removeSearch(searchId);
+        return true;
+    }
 
-                        // query updated cache
-                        QueryResponse cachedResponse = executeQuery(null, request, subject,
-                                new HashMap<>(CACHE_PROPERTIES));
+    /**
+     * Cancels all of the searches started by a client session, for example because the client
+     * disconnected.
+     *
+     * @param sessionId
+     *            - ID of the client session
+     */
+    public void cancelSearches(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
 
-                        try {
-                            Search search = addQueryResponseToSearch(request, cachedResponse);
-                            search.updateStatus(sourceId, indexResponse);
-                            pushResults(request.getId(), controller.transform(search, request),
-                                    session);
-                            if (search.isFinished()) {
-                                searchMap.remove(request.getId());
-                            }
-                        } catch (InterruptedException e) {
-                            LOGGER.error("Failed adding federated search results.", e);
-                        } catch (CatalogTransformerException e) {
-                            LOGGER.error("Failed to transform federated search results.", e);
-                        }
+        Set<String> searchIds = sessionSearches.remove(sessionId);
+        if (searchIds != null) {
+            for (String searchId : searchIds) {
+                ActiveSearch activeSearch = activeSearches.get(searchId);
+                QueryCoalescer.Subscriber subscriber = queryCoalescer.getSubscriber(searchId);
+                if ((activeSearch != null && sessionId.equals(activeSearch.sessionId)) || (
+                        subscriber != null && sessionId.equals(subscriber.getSessionId()))) {
+                    cancelSearch(searchId);
+                }
+            }
+        }
+    }
+
+    private void trackSession(ServerSession remote, String searchId) {
+        Set<String> searchIds = sessionSearches.get(remote.getId());
+        if (searchIds == null) {
+            searchIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            Set<String> existing = sessionSearches.putIfAbsent(remote.getId(), searchIds);
+            if (existing != null) {
+                searchIds = existing;
+            } else {
+                // also covers clients that go away without disconnecting
+                remote.addListener(new ServerSession.RemoveListener() {
+                    @Override
+                    public void removed(ServerSession session, boolean timeout) {
+                        cancelSearches(session.getId());
                     }
                 });
             }
-        } else {
-            final Comparator<Result> sortComparator = getResultComparator(request.getQuery());
-            final int maxResults = request.getQuery().getPageSize() > 0 ?
-                    request.getQuery().getPageSize() :
-                    Integer.MAX_VALUE;
-            final List<Result> results = Collections.synchronizedList(new ArrayList<Result>());
+        }
+        searchIds.add(searchId);
+    }
 
-            for (final String sourceId : request.getSourceIds()) {
-                LOGGER.debug("Executing async query without cache on: {}", sourceId);
-                executorService.submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        QueryResponse sourceResponse = executeQuery(sourceId, request, subject,
-                                new HashMap<String, Serializable>());
+    private void untrackSession(String sessionId, String searchId) {
+        if (sessionId != null) {
+            Set<String> searchIds = sessionSearches.get(sessionId);
+            if (searchIds != null) {
+                searchIds.remove(searchId);
+            }
+        }
+    }
 
-                        results.addAll(sourceResponse.getResults());
+    /**
+     * Collapses the copies of the same product in a response from the cache, which holds the
+     * results of all of the sources of the search.
+     *
+     * @return the deduplicator holding the number of collapsed copies, or null if deduplication
+     * is disabled
+     */
+    private ResultDeduplicator deduplicate(SearchRequest request, QueryResponse response) {
+        if (!deduplicateResults || response.getResults().isEmpty()) {
+            return null;
+        }
 
-                        List<Result> sortedResults = Ordering.from(sortComparator)
-                                .immutableSortedCopy(results);
+        ResultDeduplicator deduplicator = new ResultDeduplicator(deduplicationAttribute);
+        List<Result> unique = deduplicator.deduplicate(response.getResults(),
+                getResultComparator(request.getQuery()));
+        if (unique.size() < response.getResults().size()) {
+            response.getResults().clear();
+            response.getResults().addAll(unique);
+        }
+        return deduplicator;
+    }
 
-                        sourceResponse.getResults().clear();
-                        sourceResponse.getResults().addAll(sortedResults.size() > maxResults ?
-                                sortedResults.subList(0, maxResults) :
-                                sortedResults);
+    private void updateDuplicates(Search search, ResultDeduplicator deduplicator) {
+        if (deduplicator != null) {
+            search.setDuplicateCounts(deduplicator.getDuplicateCounts());
+        }
+    }
 
-                        try {
-                            Search search = addQueryResponseToSearch(request, sourceResponse);
-                            search.updateStatus(sourceId, sourceResponse);
-                            pushResults(request.getId(), controller.transform(search, request),
-                                    session);
-                            if (search.isFinished()) {
-                                searchMap.remove(request.getId());
-                            }
-                        } catch (InterruptedException e) {
-                            LOGGER.error("Failed adding federated search results.", e);
-                        } catch (CatalogTransformerException e) {
-                            LOGGER.error("Failed to transform federated search results.", e);
-                        }
-                    }
-                });
-            }
+    private boolean isCancelled(SearchRequest request, String sourceId) {
+        if (request.isCancelled()) {
+            LOGGER.debug("Search {} was cancelled, dropping results of {}.", request.getId(),
+                    sourceId);
+            return true;
         }
+        return false;
     }
 
-    private Comparator<Result> getResultComparator(Query query) {
-        Comparator<Result> sortComparator = new RelevanceResultComparator(SortOrder.DESCENDING);
-        SortBy sortBy = query.getSortBy();
+    private void finishSearch(SearchRequest request) {
+        if (request.getWindowKey() != null && !request.isCancelled()) {
+            Search search = searchStore.get(request.getId());
+            if (search != null && search.getCompositeQueryResponse() != null
+                    && !hasFailedSource(search, request)) {
+                LOGGER.debug("Keeping the results of search {} for paging.", request.getId());
+                resultWindows.put(request.getWindowKey(), search);
+            }
+        }
 
-        if (sortBy != null && sortBy.getPropertyName() != null) {
-            PropertyName sortingProp = sortBy.getPropertyName();
-            String sortType = sortingProp.getPropertyName();
-            SortOrder sortOrder = (sortBy.getSortOrder() == null) ?
-                    SortOrder.DESCENDING :
-                    sortBy.getSortOrder();
+        ActiveSearch activeSearch = activeSearches.get(request.getId());
+        if (activeSearch != null && activeSearch.request == request) {
+            if (activeSearches.remove(request.getId(), activeSearch)) {
+                untrackSession(activeSearch.sessionId, request.getId());
+            }
+        }
+        removeSearch(request.getId());
+    }
 
-            // Temporal searches are currently sorted by the effective time
-            if (Metacard.EFFECTIVE.equals(sortType) || Result.TEMPORAL.equals(sortType)) {
-                sortComparator = new TemporalResultComparator(sortOrder);
-            } else if (Metacard.CREATED.equals(sortType) || Metacard.MODIFIED.equals(sortType)) {
-                sortComparator = new TemporalResultComparator(sortOrder, sortType);
-            } else if (Result.DISTANCE.equals(sortType)) {
-                sortComparator = new DistanceResultComparator(sortOrder);
-            } else if (Result.RELEVANCE.equals(sortType)) {
-                sortComparator = new RelevanceResultComparator(sortOrder);
+    private boolean hasFailedSource(Search search, SearchRequest request) {
+        for (String sourceId : request.getSourceIds()) {
+            if (search.isFailed(sourceId)) {
+                return true;
             }
         }
-        return sortComparator;
+        return false;
     }
 
-    private Search addQueryResponseToSearch(SearchRequest searchRequest,
-            QueryResponse queryResponse) throws InterruptedException {
-        Search search = null;
-        if (searchMap.containsKey(searchRequest.getId())) {
-            LOGGER.debug("Using previously created Search object for cache: {}",
-                    searchRequest.getId());
-            search = searchMap.get(searchRequest.getId());
-            search.addQueryResponse(queryResponse);
-        } else {
-            LOGGER.debug("Creating new Search object to cache async query results: {}",
-                    searchRequest.getId());
-            search = new Search();
-            search.setSearchRequest(searchRequest);
-            search.addQueryResponse(queryResponse);
-            searchMap.put(searchRequest.getId(), search);
+    private void removeSearch(String searchId) {
+        searchStore.remove(searchId);
+        deltaEncoders.remove(searchId);
+        channelPublisher.remove(getChannelName(searchId));
+        pushThrottle.remove(searchId);
+        for (QueryCoalescer.Subscriber subscriber : queryCoalescer.finish(searchId)) {
+            String subscriberId = subscriber.getRequest().getId();
+            untrackSession(subscriber.getSessionId(), subscriberId);
+            deltaEncoders.remove(subscriberId);
+            channelPublisher.remove(getChannelName(subscriberId));
         }
-        return search;
+        LOGGER.debug("Search store: {}", searchStore);
     }
 
     /**
-     * Executes the OpenSearchQuery and formulates the response
-     *
-     * @param subject
-     *            -the user subject
+     * Execute all of the queries contained within the SearchRequest
      *
-     * @return the response on the query
+     * @param request
+     *            - SearchRequest containing a query for 1 or more sources
+     * @param session
+     *            - Cometd ServerSession
      */
-    private QueryResponse executeQuery(String sourceId, SearchRequest searchRequest,
-            Subject subject, Map<String, Serializable> properties) {
-        Query query = searchRequest.getQuery();
-        QueryResponse response = getEmptyResponse(sourceId);
-        long startTime = System.currentTimeMillis();
+    public void executeQuery(final SearchRequest request, final ServerSession session,
+            final Subject subject) {
+        executeQuery(request, session, null, subject);
+    }
 
-        try {
-            if (query != null) {
-                List<String> sourceIds;
-                if (sourceId == null) {
+    /**
+     * Execute all of the queries contained within the SearchRequest. The search is cancelled when
+     * the client session goes away or starts another query with the same id.
+     *
+     * @param request
+     *            - SearchRequest containing a query for 1 or more sources
+     * @param session
+     *            - Cometd ServerSession
+     * @param remote
+     *            - Client session that asked for the search, may be null
+     */
+    public void executeQuery(SearchRequest request, final ServerSession session,
+            ServerSession remote, final Subject subject) {
+
+        String sessionId = remote == null ? null : remote.getId();
+        if (!isOwnedBy(request.getId(), sessionId)) {
+            // a new query on an ID replaces the search using it, which only its session may do
+            LOGGER.warn("Session {} cannot replace search {} of another session.", sessionId,
+                    request.getId());
+            return;
+        }
+
+        String userId = getUserId(remote != null ? remote : session, subject);
+
+        SearchRequest windowed = getWindowedRequest(request, userId);
+        if (windowed != null) {
+            if (pushFromWindow(windowed, session)) {
+                return;
+            }
+            request = windowed;
+        }
+
+        // a new query on the same id replaces the coalesced search it was subscribed to
+        SearchRequest abandoned = queryCoalescer.unsubscribe(request.getId());
+        if (abandoned != null) {
+            cancelSearch(abandoned.getId());
+        }
+
+        String key = coalesceQueries ? getCoalescingKey(request, userId) : null;
+        if (key == null) {
+            startSearch(request, session, remote, userId, subject);
+            return;
+        }
+
+        // replaces a search that was started before coalescing was enabled
+        cancelSearch(request.getId());
+
+        SearchRequest execution = new SearchRequest(request.getSourceIds(), request.getQuery(),
+                COALESCED_SEARCH_PREFIX + UUID.randomUUID().toString());
+        execution.setMetacardTypeReferences(request.isMetacardTypeReferences());
+        execution.setStreamResults(request.isStreamResults());
+        execution.setGeometryTolerance(request.getGeometryTolerance());
+        execution.setClusterCellSize(request.getClusterCellSize());
+        execution.setFacets(request.getFacetAttributes(), request.getHistogramAttribute(),
+                request.getHistogramInterval());
+        execution.setFields(request.getFields());
+        execution.setResultWindow(request.getWindowKey(), request.getResultOffset(),
+                request.getResultLimit());
+
+        QueryCoalescer.Group group = queryCoalescer.subscribe(key, request,
+                remote == null ? null : remote.getId(), execution);
+        if (remote != null) {
+            trackSession(remote, request.getId());
+        }
+        deltaEncoders.remove(request.getId());
+
+        if (group.getExecution() == execution) {
+            LOGGER.debug("Starting execution {} for search {}", execution.getId(),
+                    request.getId());
+            startSearch(execution, session, null, userId, subject);
+        } else {
+            LOGGER.debug("Search {} joined execution {} of an identical search", request.getId(),
+                    group.getExecution().getId());
+            if (request.isStreamResults()) {
+                Search current = searchStore.get(group.getExecution().getId());
+                if (current != null && current.getCompositeQueryResponse() != null) {
+                    synchronized (group) {
+                        try {
+                            pushStreamed(current, request, session);
+                        } catch (CatalogTransformerException e) {
+                            LOGGER.error("Failed to transform search results of {}.",
+                                    request.getId(), e);
+                        }
+                    }
+                }
+                return;
+            }
+            synchronized (group) {
+                JSONObject lastSnapshot = group.getLastSnapshot();
+                if (lastSnapshot != null) {
+                    publishSnapshot(request, withId(lastSnapshot, request.getId()), session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the key under which identical searches share one execution. Two searches are
+     * identical if they have the same normalized CQL, sources, paging, sort and metacard type
+     * format, and are run by the same user.
+     *
+     * @return the key, or null if the search cannot be coalesced
+     */
+    private String getCoalescingKey(SearchRequest request, String userId) {
+        String key = getQueryKey(request, userId);
+        if (key == null) {
+            return null;
+        }
+
+        Query query = request.getQuery();
+        return key + '\n' + query.getStartIndex() + ',' + query.getPageSize() + '\n'
+                + request.getResultOffset() + ',' + request.getResultLimit() + '\n'
+                + request.isStreamResults() + ',' + request.getGeometryTolerance() + ','
+                + request.getClusterCellSize() + '\n' + request.getFacetAttributes() + ','
+                + request.getHistogramAttribute() + ':' + request.getHistogramInterval() + '\n'
+                + new TreeSet<>(request.getFields());
+    }
+
+    /**
+     * Builds a key from the normalized CQL, sources, sort, metacard type format and user of a
+     * search, leaving out the paging.
+     *
+     * @return the key, or null if the query of the search cannot be normalized
+     */
+    private String getQueryKey(SearchRequest request, String userId) {
+        Query query = request.getQuery();
+        if (query == null || userId == null) {
+            return null;
+        }
+
+        String cql;
+        try {
+            cql = ECQL.toCQL(query);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to normalize the query of search {}.", request.getId(), e);
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(cql);
+        key.append('\n').append(new TreeSet<>(request.getSourceIds()));
+        SortBy sortBy = query.getSortBy();
+        if (sortBy != null && sortBy.getPropertyName() != null) {
+            key.append('\n').append(sortBy.getPropertyName().getPropertyName()).append(',')
+                    .append(sortBy.getSortOrder());
+        }
+        key.append('\n').append(request.isMetacardTypeReferences());
+        key.append('\n').append(userId);
+        return key.toString();
+    }
+
+    /**
+     * Widens a search to the window of result pages its page falls in. The window is aligned on
+     * its size, so every page of the window maps to the same key.
+     *
+     * @return a search fetching the whole window and sending only the requested page, or null if
+     * result windows are disabled or the page does not fit in a window
+     */
+    private SearchRequest getWindowedRequest(SearchRequest request, String userId) {
+        Query query = request.getQuery();
+        if (resultWindowPages < 2 || query == null || query.getPageSize() <= 0
+                || query.getStartIndex() < 1) {
+            return null;
+        }
+
+        int pageSize = query.getPageSize();
+        if (pageSize > Integer.MAX_VALUE / resultWindowPages) {
+            return null;
+        }
+        int windowSize = pageSize * resultWindowPages;
+        int windowStart = ((query.getStartIndex() - 1) / windowSize) * windowSize + 1;
+        int offset = query.getStartIndex() - windowStart;
+        if (offset + pageSize > windowSize) {
+            return null;
+        }
+
+        String key = getQueryKey(request, userId);
+        if (key == null) {
+            return null;
+        }
+
+        SearchRequest windowed = new SearchRequest(request.getSourceIds(),
+                new QueryImpl(query, windowStart, windowSize, query.getSortBy(),
+                        query.requestsTotalResultsCount(), query.getTimeoutMillis()),
+                request.getId());
+        windowed.setDeltaUpdates(request.isDeltaUpdates());
+        windowed.setMetacardTypeReferences(request.isMetacardTypeReferences());
+        windowed.setStreamResults(request.isStreamResults());
+        windowed.setDictionaryEncoding(request.isDictionaryEncoding());
+        windowed.setGeometryTolerance(request.getGeometryTolerance());
+        windowed.setClusterCellSize(request.getClusterCellSize());
+        windowed.setFacets(request.getFacetAttributes(), request.getHistogramAttribute(),
+                request.getHistogramInterval());
+        windowed.setFields(request.getFields());
+        windowed.setResultWindow(key + '\n' + windowStart + ',' + windowSize, offset, pageSize);
+        return windowed;
+    }
+
+    /**
+     * Answers a search for another page from the kept results of an earlier search of the same
+     * window. Asking again for the page the window was fetched for, such as searching again, is
+     * always sent to the sources so it is never answered with stale results.
+     *
+     * @return true if the search was answered
+     */
+    private boolean pushFromWindow(SearchRequest request, ServerSession session) {
+        Search window = resultWindows.get(request.getWindowKey());
+        if (window == null || window.getSearchRequest().getResultOffset() == request
+                .getResultOffset()) {
+            return false;
+        }
+
+        // replaces whatever was running with the same id
+        cancelSearch(request.getId());
+        deltaEncoders.remove(request.getId());
+
+        try {
+            LOGGER.debug("Answering search {} from kept results.", request.getId());
+            if (request.isStreamResults()) {
+                pushStreamed(window, request, session);
+            } else {
+                publishSnapshot(request, transform(window, request), session);
+            }
+        } catch (CatalogTransformerException e) {
+            LOGGER.warn("Unable to answer search {} from kept results.", request.getId(), e);
+            return false;
+        } finally {
+            deltaEncoders.remove(request.getId());
+            channelPublisher.remove(getChannelName(request.getId()));
+        }
+        return true;
+    }
+
+    private void startSearch(final SearchRequest request, final ServerSession session,
+            ServerSession remote, final String userId, final Subject subject) {
+
+        ActiveSearch activeSearch = new ActiveSearch(request,
+                remote == null ? null : remote.getId());
+        ActiveSearch previous = activeSearches.put(request.getId(), activeSearch);
+        if (previous != null) {
+            LOGGER.debug("Search {} was replaced by a new query, cancelling it.",
+                    request.getId());
+            previous.cancel();
+            searchStore.remove(request.getId());
+        }
+        if (remote != null) {
+            trackSession(remote, request.getId());
+        }
+
+        // a new query on the same id starts a new stream of updates
+        deltaEncoders.remove(request.getId());
+
+        if (!cacheDisabled) {
+            final CacheRefresh cacheRefresh = new CacheRefresh(request, userId, subject,
+                    session);
+
+            submitQuery(request, userId, CACHE_SOURCE_ID, session, new Runnable() {
+                @Override
+                public void run() {
+                    // check if there are any currently cached results
+                    // search cache for all sources
+                    cacheRefresh.request(null, null);
+                }
+            });
+
+            for (final String sourceId : request.getSourceIds()) {
+                LOGGER.debug("Executing async query on: {}", sourceId);
+                submitQuery(request, userId, sourceId, session, new Runnable() {
+                    @Override
+                    public void run() {
+                        // update index from federated sources
+                        QueryResponse indexResponse = querySource(sourceId, request, subject,
+                                new HashMap<>(INDEX_PROPERTIES));
+                        if (isCancelled(request, sourceId)) {
+                            return;
+                        }
+
+                        // query updated cache
+                        cacheRefresh.request(sourceId, indexResponse);
+                    }
+                });
+            }
+        } else {
+            final int maxResults = request.getQuery().getPageSize() > 0 ?
+                    request.getQuery().getPageSize() :
+                    Integer.MAX_VALUE;
+            final ResultDeduplicator deduplicator = deduplicateResults ?
+                    new ResultDeduplicator(deduplicationAttribute) :
+                    null;
+            final ResultMerger merger = new ResultMerger(
+                    getResultComparator(request.getQuery()), maxResults, deduplicator);
+
+            for (final String sourceId : request.getSourceIds()) {
+                LOGGER.debug("Executing async query without cache on: {}", sourceId);
+                submitQuery(request, userId, sourceId, session, new Runnable() {
+                    @Override
+                    public void run() {
+                        QueryResponse sourceResponse = querySource(sourceId, request, subject,
+                                new HashMap<String, Serializable>());
+                        if (isCancelled(request, sourceId)) {
+                            return;
+                        }
+
+                        List<Result> mergedResults = merger.merge(sourceResponse.getResults());
+
+                        sourceResponse.getResults().clear();
+                        sourceResponse.getResults().addAll(mergedResults);
+
+                        try {
+                            Search search = addQueryResponseToSearch(request, sourceResponse);
+                            search.updateStatus(sourceId, sourceResponse);
+                            updateDuplicates(search, deduplicator);
+                            requestPush(search, request, session, search.isFailed(sourceId));
+                            if (search.isFinished()) {
+                                finishSearch(request);
+                            }
+                        } catch (InterruptedException e) {
+                            LOGGER.error("Failed adding federated search results.", e);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Finishes a search whose sources have all responded. If the search asked for clusters or
+     * facets, they are first read from the cache by one more query over all of its cached
+     * results, and pushed again. Results returned by several sources are counted once. That
+     * query is queued after the last page was pushed, so it does not hold up the results.
+     */
+    private void summarizeAndFinish(final Search search, final SearchRequest request,
+            String userId, final Subject subject, final ServerSession session) {
+        final Query query = request.getQuery();
+        if ((search.getClusters() == null && search.getFacets() == null) || clusterMaxResults <= 0
+                || query == null) {
+            finishSearch(request);
+            return;
+        }
+
+        boolean queued = submitQuery(request, userId, CACHE_SOURCE_ID, session, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (isCancelled(request, CACHE_SOURCE_ID)) {
+                        return;
+                    }
+                    Query summaryQuery = new QueryImpl(query, 1, clusterMaxResults,
+                            query.getSortBy(), false, query.getTimeoutMillis());
+                    QueryResponse response = executeQuery(null, request, summaryQuery, subject,
+                            new HashMap<>(CACHE_PROPERTIES));
+                    if (isCancelled(request, CACHE_SOURCE_ID)) {
+                        return;
+                    }
+                    if (hasException(response)) {
+                        LOGGER.debug("Unable to read the cached results of search {} to "
+                                + "summarize.", request.getId());
+                        return;
+                    }
+                    deduplicate(request, response);
+                    if (search.getClusters() != null) {
+                        search.getClusters().add(CACHE_SOURCE_ID, response.getResults());
+                    }
+                    if (search.getFacets() != null) {
+                        search.getFacets().add(CACHE_SOURCE_ID, response.getResults());
+                    }
+                    requestPush(search, request, session, true);
+                } finally {
+                    if (!request.isCancelled()) {
+                        finishSearch(request);
+                    }
+                }
+            }
+        });
+        if (!queued) {
+            finishSearch(request);
+        }
+    }
+
+    private boolean hasException(QueryResponse response) {
+        for (ProcessingDetails details : response.getProcessingDetails()) {
+            if (details.hasException()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands a query task to the {@link QueryScheduler}. If the scheduler refuses the task the
+     * source is reported as failed so the search can still finish.
+     *
+     * @return true if the task was queued, false if it was rejected
+     */
+    private boolean submitQuery(SearchRequest request, String userId, String sourceId,
+            ServerSession session, Runnable task) {
+        try {
+            Future<?> future = queryScheduler.submit(userId, sourceId, task);
+            ActiveSearch activeSearch = activeSearches.get(request.getId());
+            if (activeSearch != null && activeSearch.request == request) {
+                activeSearch.addTask(future);
+            }
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Unable to schedule query on {} for search {}.", sourceId,
+                    request.getId(), e);
+            if (!CACHE_SOURCE_ID.equals(sourceId)) {
+                failQuery(request, sourceId, e, session);
+            }
+            return false;
+        }
+    }
+
+    private void failQuery(SearchRequest request, String sourceId, Exception e,
+            ServerSession session) {
+        if (request.isCancelled()) {
+            return;
+        }
+
+        QueryResponse response = getFailedResponse(sourceId, e, 0L);
+
+        try {
+            Search search = addQueryResponseToSearch(request, null);
+            if (search.getCompositeQueryResponse() == null) {
+                search.addQueryResponse(response);
+            }
+            search.updateStatus(sourceId, response);
+            requestPush(search, request, session, true);
+            if (search.isFinished()) {
+                finishSearch(request);
+            }
+        } catch (InterruptedException ie) {
+            LOGGER.error("Failed adding rejected search results.", ie);
+        }
+    }
+
+    private String getUserId(ServerSession session, Subject subject) {
+        if (subject != null && subject.getPrincipals() != null) {
+            for (Object principal : subject.getPrincipals().asList()) {
+                if (principal instanceof SecurityAssertion) {
+                    return ((SecurityAssertion) principal).getPrincipal().getName();
+                }
+            }
+        }
+        return session == null ? null : session.getId();
+    }
+
+    private Comparator<Result> getResultComparator(Query query) {
+        Comparator<Result> sortComparator = new RelevanceResultComparator(SortOrder.DESCENDING);
+        SortBy sortBy = query.getSortBy();
+
+        if (sortBy != null && sortBy.getPropertyName() != null) {
+            PropertyName sortingProp = sortBy.getPropertyName();
+            String sortType = sortingProp.getPropertyName();
+            SortOrder sortOrder = (sortBy.getSortOrder() == null) ?
+                    SortOrder.DESCENDING :
+                    sortBy.getSortOrder();
+
+            // Temporal searches are currently sorted by the effective time
+            if (Metacard.EFFECTIVE.equals(sortType) || Result.TEMPORAL.equals(sortType)) {
+                sortComparator = new TemporalResultComparator(sortOrder);
+            } else if (Metacard.CREATED.equals(sortType) || Metacard.MODIFIED.equals(sortType)) {
+                sortComparator = new TemporalResultComparator(sortOrder, sortType);
+            } else if (Result.DISTANCE.equals(sortType)) {
+                sortComparator = new DistanceResultComparator(sortOrder);
+            } else if (Result.RELEVANCE.equals(sortType)) {
+                sortComparator = new RelevanceResultComparator(sortOrder);
+            }
+        }
+        return sortComparator;
+    }
+
+    private Search addQueryResponseToSearch(SearchRequest searchRequest,
+            QueryResponse queryResponse) throws InterruptedException {
+        Search search = searchStore.getOrCreate(searchRequest);
+        search.addQueryResponse(queryResponse);
+        searchStore.update(search);
+        return search;
+    }
+
+    /**
+     * Executes the OpenSearchQuery and formulates the response
+     *
+     * @param subject
+     *            -the user subject
+     *
+     * @return the response on the query
+     */
+    private QueryResponse executeQuery(String sourceId, SearchRequest searchRequest,
+            Subject subject, Map<String, Serializable> properties) {
+        return executeQuery(sourceId, searchRequest, searchRequest.getQuery(), subject,
+                properties);
+    }
+
+    private QueryResponse executeQuery(String sourceId, SearchRequest searchRequest, Query query,
+            Subject subject, Map<String, Serializable> properties) {
+        QueryResponse response = getEmptyResponse(sourceId);
+        long startTime = System.currentTimeMillis();
+
+        try {
+            if (query != null) {
+                List<String> sourceIds;
+                if (sourceId == null) {
                     sourceIds = new ArrayList<>(searchRequest.getSourceIds());
                 } else {
                     sourceIds = Collections.singletonList(sourceId);
                 }
                 QueryRequest request = new QueryRequestImpl(query, false, sourceIds, properties);
 
-                if (subject != null) {
-                    LOGGER.debug("Adding {} property with value {} to request.",
-                            SecurityConstants.SECURITY_SUBJECT, subject);
-                    request.getProperties().put(SecurityConstants.SECURITY_SUBJECT, subject);
-                }
+                if (subject != null) {
+                    LOGGER.debug("Adding {} property with value {} to request.",
+                            SecurityConstants.SECURITY_SUBJECT, subject);
+                    request.getProperties().put(SecurityConstants.SECURITY_SUBJECT, subject);
+                }
+
+                LOGGER.debug("Sending query: {}", query);
+                response = framework.query(request);
+            }
+        } catch (UnsupportedQueryException | FederationException e) {
+            LOGGER.warn("Error executing query", e);
+            response.getProcessingDetails().add(new ProcessingDetailsImpl(sourceId, e));
+        } catch (SourceUnavailableException e) {
+            LOGGER.warn("Error executing query because the underlying source was unavailable.", e);
+            response.getProcessingDetails().add(new ProcessingDetailsImpl(sourceId, e));
+        } catch (RuntimeException e) {
+            // Account for any runtime exceptions and send back a server error
+            // this prevents full stacktraces returning to the client
+            // this allows for a graceful server error to be returned
+            LOGGER.warn("RuntimeException on executing query", e);
+            response.getProcessingDetails().add(new ProcessingDetailsImpl(sourceId, e));
+        }
+        long estimatedTime = System.currentTimeMillis() - startTime;
+        response.getProperties().put("elapsed", estimatedTime);
+
+        return response;
+    }
+
+    /**
+     * Queries a single source and records how long it took. When adaptive deadlines are enabled
+     * the source is given a deadline derived from its recent query times instead of the full
+     * timeout of the query, and when hedging is enabled a second identical request is sent if
+     * the first one is slower than 95% of the recent queries on the source. The first response
+     * wins. A source that misses its deadline is reported as failed so the search can finish
+     * with the results of the other sources.
+     */
+    private QueryResponse querySource(final String sourceId, final SearchRequest searchRequest,
+            final Subject subject, final Map<String, Serializable> properties) {
+        Query query = searchRequest.getQuery();
+        if ((!adaptiveSourceDeadlines && !hedgedQueries) || query == null) {
+            QueryResponse response = executeQuery(sourceId, searchRequest, subject, properties);
+            recordLatency(sourceId, response);
+            return response;
+        }
+
+        long timeout = query.getTimeoutMillis();
+        long deadline = getSourceDeadline(sourceId, timeout);
+        final Query sourceQuery = deadline > 0 && (timeout <= 0 || deadline < timeout) ?
+                new QueryImpl(query, query.getStartIndex(), query.getPageSize(),
+                        query.getSortBy(), query.requestsTotalResultsCount(), deadline) :
+                query;
+        long hedgeDelay = hedgedQueries ? latencyTracker.getPercentile(sourceId, 95) : -1;
+
+        Callable<QueryResponse> attempt = new Callable<QueryResponse>() {
+            @Override
+            public QueryResponse call() {
+                // each attempt gets its own copy, the framework may add to the properties
+                QueryResponse response = executeQuery(sourceId, searchRequest, sourceQuery,
+                        subject, new HashMap<>(properties));
+                recordLatency(sourceId, response);
+                return response;
+            }
+        };
+
+        BlockingQueue<SourceAttempt> completed = new LinkedBlockingQueue<>();
+        List<SourceAttempt> attempts = new ArrayList<>(2);
+        long startTime = System.currentTimeMillis();
+
+        SourceAttempt first = new SourceAttempt(attempt, completed, false);
+        try {
+            getSourceQueryExecutor().execute(first);
+        } catch (RejectedExecutionException e) {
+            // every attempt thread is busy, so the query runs on the worker that owns its slot
+            LOGGER.debug("No thread free for a query on {}, running it without a deadline.",
+                    sourceId);
+            QueryResponse response = executeQuery(sourceId, searchRequest, subject, properties);
+            recordLatency(sourceId, response);
+            return response;
+        }
+        attempts.add(first);
+
+        try {
+            SourceAttempt done = null;
+            if (hedgeDelay > 0 && (deadline <= 0 || hedgeDelay < deadline)) {
+                done = completed.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    SourceAttempt hedge = hedge(sourceId, attempt, completed);
+                    if (hedge != null) {
+                        LOGGER.debug("Query on {} is slower than {} ms, sent a hedged request.",
+                                sourceId, hedgeDelay);
+                        attempts.add(hedge);
+                    }
+                }
+            }
+
+            if (done == null) {
+                if (deadline > 0) {
+                    long remaining = deadline + DEADLINE_GRACE_MILLIS - (System
+                            .currentTimeMillis() - startTime);
+                    done = completed.poll(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                } else {
+                    done = completed.take();
+                }
+            }
+
+            if (done != null) {
+                return done.getResponse();
+            }
+
+            LOGGER.debug("Query on {} missed its deadline of {} ms.", sourceId, deadline);
+            return getFailedResponse(sourceId, new TimeoutException(
+                    "Source " + sourceId + " did not respond within " + deadline + " ms."),
+                    System.currentTimeMillis() - startTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return getFailedResponse(sourceId, e, System.currentTimeMillis() - startTime);
+        } catch (ExecutionException e) {
+            LOGGER.warn("Error executing query", e.getCause());
+            return getFailedResponse(sourceId, e, System.currentTimeMillis() - startTime);
+        } finally {
+            for (SourceAttempt sourceAttempt : attempts) {
+                sourceAttempt.abandon();
+            }
+        }
+    }
+
+    /**
+     * Sends a hedged request, if a worker slot and a thread are free for it. The hedge holds its
+     * slot until its thread is done, whether or not its response is used.
+     *
+     * @return the hedged attempt, or null if it was skipped
+     */
+    private SourceAttempt hedge(String sourceId, Callable<QueryResponse> attempt,
+            BlockingQueue<SourceAttempt> completed) {
+        if (!queryScheduler.tryAcquireSlot()) {
+            LOGGER.debug("No worker slot free, not hedging the query on {}.", sourceId);
+            return null;
+        }
+
+        SourceAttempt hedge = new SourceAttempt(attempt, completed, true);
+        try {
+            getSourceQueryExecutor().execute(hedge);
+            return hedge;
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("No thread free, not hedging the query on {}.", sourceId);
+            queryScheduler.releaseSlot();
+            return null;
+        }
+    }
+
+    private long getSourceDeadline(String sourceId, long timeout) {
+        if (!adaptiveSourceDeadlines) {
+            return timeout;
+        }
+
+        long p99 = latencyTracker.getPercentile(sourceId, 99);
+        if (p99 < 0) {
+            return timeout;
+        }
+
+        long deadline = Math.max(minimumSourceDeadlineMillis,
+                (long) (p99 * sourceDeadlineMultiplier));
+        return timeout > 0 ? Math.min(timeout, deadline) : deadline;
+    }
+
+    private void recordLatency(String sourceId, QueryResponse response) {
+        Object elapsed = response.getProperties().get("elapsed");
+        if (elapsed instanceof Long) {
+            latencyTracker.record(sourceId, (Long) elapsed);
+        }
+    }
+
+    /**
+     * @return the executor running the attempts of queries with a deadline or hedging. Unless
+     *         virtual threads are used, it has at most one thread per concurrent query and
+     *         rejects attempts when all of them are busy, so abandoned attempts cannot pile up
+     *         threads.
+     */
+    private ExecutorService getSourceQueryExecutor() {
+        synchronized (this) {
+            if (virtualThreadExecutor != null) {
+                return virtualThreadExecutor;
+            }
+        }
+        if (sourceQueryExecutor == null) {
+            synchronized (this) {
+                if (sourceQueryExecutor == null) {
+                    sourceQueryExecutor = new ThreadPoolExecutor(0,
+                            queryScheduler.getMaxConcurrentQueries(), 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>());
+                }
+            }
+        }
+        return sourceQueryExecutor;
+    }
+
+    private QueryResponse getFailedResponse(String sourceId, Exception e, long elapsed) {
+        QueryResponse response = getEmptyResponse(sourceId);
+        response.getProcessingDetails().add(new ProcessingDetailsImpl(sourceId, e));
+        response.getProperties().put("elapsed", elapsed);
+        return response;
+    }
+
+    private QueryResponse getEmptyResponse(String sourceId) {
+        // No query was specified
+        QueryRequest queryRequest = new QueryRequestImpl(null, false,
+                Collections.singletonList(sourceId), null);
+
+        // Create a dummy QueryResponse with zero results
+        return new QueryResponseImpl(queryRequest, new ArrayList<Result>(), 0);
+    }
+
+    private JSONObject transform(Search search, SearchRequest searchRequest) throws
+            CatalogTransformerException {
+
+        SourceResponse upstreamResponse = search.getCompositeQueryResponse();
+        Map<String, MetacardType> metaTypes = new HashMap<String, MetacardType>();
+        if (upstreamResponse == null) {
+            throw new CatalogTransformerException(
+                    "Cannot transform null " + SourceResponse.class.getName());
+        }
+
+        JSONObject rootObject = new JSONObject();
+
+        addObject(rootObject, Search.HITS, search.getHits());
+        addObject(rootObject, Search.ID, searchRequest.getId());
+        addObject(rootObject, Search.RESULTS,
+                getResultList(getRequestedResults(upstreamResponse.getResults(), searchRequest),
+                        metaTypes, searchRequest));
+        addObject(rootObject, Search.STATUS, getQueryStatus(search.getQueryStatus()));
+        if (searchRequest.getClusterCellSize() > 0) {
+            addObject(rootObject, Search.CLUSTERS,
+                    getClusters(search, upstreamResponse.getResults(),
+                            searchRequest.getClusterCellSize()));
+        }
+        addObject(rootObject, Search.FACETS, getFacets(search, upstreamResponse.getResults()));
+        if (searchRequest.isMetacardTypeReferences()) {
+            addObject(rootObject, Search.METACARD_TYPE_VERSIONS,
+                    getMetacardTypeVersions(metaTypes.values()));
+        } else {
+            addObject(rootObject, Search.METACARD_TYPES, getMetacardTypes(metaTypes.values()));
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(rootObject.toJSONString());
+            LOGGER.debug("Metacard JSON cache: {}", metacardJsonCache);
+        }
+
+        return rootObject;
+    }
+
+    /**
+     * @return the part of the merged results the client asked for, if the search fetched more
+     */
+    private List<Result> getRequestedResults(List<Result> results, SearchRequest searchRequest) {
+        int offset = searchRequest.getResultOffset();
+        int limit = searchRequest.getResultLimit();
+        if (offset <= 0 && limit < 0) {
+            return results;
+        }
+
+        int size = results.size();
+        int from = Math.min(offset, size);
+        int to = limit < 0 ? size : (int) Math.min(size, (long) from + limit);
+        return results.subList(from, to);
+    }
+
+    /**
+     * @return the clusters of the locations of the cached results of a search once they have been
+     *         read, otherwise of the results the search holds
+     */
+    private JSONArray getClusters(Search search, List<Result> results, double cellSize) {
+        if (search.getClusters() != null && !search.getClusters().isEmpty()) {
+            return search.getClusters().toJson();
+        }
+        ClusterAggregator aggregator = new ClusterAggregator(cellSize);
+        aggregator.add(Search.RESULTS, results);
+        return aggregator.toJson();
+    }
+
+    /**
+     * @return the facets of the cached results of a search once they have been read, otherwise
+     *         of the results the search holds, or null if the search did not ask for facets
+     */
+    private JSONObject getFacets(Search search, List<Result> results) {
+        if (search.getFacets() == null) {
+            return null;
+        }
+        if (!search.getFacets().isEmpty()) {
+            return search.getFacets().toJson();
+        }
+        SearchRequest request = search.getSearchRequest();
+        Facets facets = new Facets(request.getFacetAttributes(), request.getHistogramAttribute(),
+                request.getHistogramInterval());
+        facets.add(Search.RESULTS, results);
+        return facets.toJson();
+    }
+
+    private JSONArray getQueryStatus(Map<String, QueryStatus> queryStatus) {
+        JSONArray statuses = new JSONArray();
+
+        for (String key : queryStatus.keySet()) {
+            QueryStatus status = queryStatus.get(key);
+
+            JSONObject statusObject = new JSONObject();
+
+            addObject(statusObject, Search.ID, status.getSourceId());
+            if (status.isDone()) {
+                addObject(statusObject, Search.RESULTS, status.getResultCount());
+                addObject(statusObject, Search.HITS, status.getHits());
+                addObject(statusObject, Search.ELAPSED, status.getElapsed());
+            }
+            if (status.getDuplicates() > 0) {
+                addObject(statusObject, Search.DUPLICATES, status.getDuplicates());
+            }
+            addObject(statusObject, Search.STATE, status.getState());
+
+            statuses.add(statusObject);
+        }
+
+        return statuses;
+    }
+
+    private JSONArray getResultList(List<Result> results, Map<String, MetacardType> metaTypes,
+            SearchRequest searchRequest) throws CatalogTransformerException {
+        JSONArray resultsList = new JSONArray();
+        if (results != null) {
+            for (Result result : results) {
+                if (result == null) {
+                    throw new CatalogTransformerException(
+                            "Cannot transform null " + Result.class.getName());
+                }
+                JSONObject jsonObj = convertToJSON(result, metaTypes, searchRequest);
+                if (jsonObj != null) {
+                    resultsList.add(jsonObj);
+                }
+            }
+        }
+        return resultsList;
+    }
+
+    private JSONObject convertToJSON(Result result, Map<String, MetacardType> metaTypes,
+            SearchRequest searchRequest) throws CatalogTransformerException {
+        JSONObject rootObject = new JSONObject();
+
+        addObject(rootObject, Search.DISTANCE, result.getDistanceInMeters());
+        addObject(rootObject, Search.RELEVANCE, result.getRelevanceScore());
+        addObject(rootObject, Search.METACARD, getMetacardJson(result,
+                searchRequest.getGeometryTolerance(), searchRequest.getFields()));
+
+        if (result.getMetacard().getMetacardType() != null && !StringUtils
+                .isBlank(result.getMetacard().getMetacardType().getName())) {
+            metaTypes.put(result.getMetacard().getMetacardType().getName(),
+                    result.getMetacard().getMetacardType());
+        }
+        return rootObject;
+    }
+
+    /**
+     * @param fields
+     *            - names of the only attributes to keep besides the id, source and type, or an
+     *            empty set to keep all of them
+     * @return the JSON of the metacard of a result, with its geometry simplified to the given
+     *         tolerance if it has enough positions to be worth it
+     */
+    private org.json.simple.JSONObject getMetacardJson(Result result, double geometryTolerance,
+            Set<String> fields) throws CatalogTransformerException {
+        Metacard metacard = result.getMetacard();
+        // the cached copy is shared, so only the per-push fields are added to a shallow copy
+        org.json.simple.JSONObject metacardJson = new org.json.simple.JSONObject();
+        metacardJson.putAll(metacardJsonCache.get(metacard, getConverter(metacard)));
+        metacardJson.put(Search.CACHED, getCachedDate(result));
+
+        if (geometryTolerance > 0 && metacardJson.get(Search.GEOMETRY) instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> geometry = (Map<String, Object>) metacardJson
+                    .get(Search.GEOMETRY);
+            if (GeometrySimplifier.countPositions(geometry) > MIN_SIMPLIFIED_POSITIONS) {
+                metacardJson.put(Search.GEOMETRY,
+                        GeometrySimplifier.simplify(geometry, geometryTolerance));
+                metacardJson.put(Search.SIMPLIFIED, true);
+            }
+        }
+
+        if (!fields.isEmpty() && metacardJson.get(Search.PROPERTIES) instanceof Map) {
+            Map<?, ?> properties = (Map<?, ?>) metacardJson.get(Search.PROPERTIES);
+            org.json.simple.JSONObject projected = new org.json.simple.JSONObject();
+            for (Map.Entry<?, ?> property : properties.entrySet()) {
+                if (fields.contains(property.getKey()) || PROJECTION_ATTRIBUTES
+                        .contains(property.getKey())) {
+                    projected.put(property.getKey(), property.getValue());
+                }
+            }
+            if (projected.size() < properties.size()) {
+                metacardJson.put(Search.PROPERTIES, projected);
+                metacardJson.put(Search.PROJECTED, true);
+            }
+        }
+        return metacardJson;
+    }
+
+    private Callable<org.json.simple.JSONObject> getConverter(final Metacard metacard) {
+        return new Callable<org.json.simple.JSONObject>() {
+            @Override
+            public org.json.simple.JSONObject call() throws Exception {
+                org.json.simple.JSONObject json = GeoJsonMetacardTransformer
+                        .convertToJSON(metacard);
+                json.put(Search.ACTIONS, getActions(metacard));
+                return json;
+            }
+        };
+    }
+
+    private String getCachedDate(Result result) {
+        Attribute cachedDate = result.getMetacard().getAttribute(Search.CACHED);
+        if (cachedDate != null && cachedDate.getValue() != null) {
+            return ISO_8601_DATE_FORMAT.print(new DateTime(cachedDate.getValue()));
+        }
+        return ISO_8601_DATE_FORMAT.print(new DateTime());
+    }
+
+    private JSONArray getActions(Metacard metacard) {
+        JSONArray actionsJson = new JSONArray();
+
+        List<Action> actions = actionRegistry.list(metacard);
+        for (Action action : actions) {
+            JSONObject actionJson = new JSONObject();
+            actionJson.put(Search.ACTIONS_ID, action.getId());
+            actionJson.put(Search.ACTIONS_TITLE, action.getTitle());
+            actionJson.put(Search.ACTIONS_DESCRIPTION, action.getDescription());
+            actionJson.put(Search.ACTIONS_URL, action.getUrl());
+            actionsJson.add(actionJson);
+        }
+        return actionsJson;
+    }
+
+    private JSONObject getMetacardTypes(Collection<MetacardType> types) {
+        JSONObject typesObject = new JSONObject();
+
+        for (MetacardType type : types) {
+            typesObject.put(type.getName(), metacardTypeRegistry.getSchema(type).getJson());
+        }
+
+        return typesObject;
+    }
+
+    private JSONObject getMetacardTypeVersions(Collection<MetacardType> types) {
+        JSONObject versionsObject = new JSONObject();
+
+        for (MetacardType type : types) {
+            versionsObject.put(type.getName(), metacardTypeRegistry.getSchema(type).getVersion());
+        }
+
+        return versionsObject;
+    }
+
+    /**
+     * Fetches a single metacard at full resolution. The query is queued on the
+     * {@link QueryScheduler} like the queries of a search, so it counts against the limits of the
+     * user and never runs on the thread of the caller, and it is given a short deadline.
+     *
+     * @param sourceId
+     *            - source holding the metacard, or null to look for it in the cache or, if the
+     *            cache is disabled, the local catalog
+     * @param query
+     *            - query selecting the metacard
+     * @param remote
+     *            - client session asking for the metacard
+     * @param subject
+     *            - subject to run the query as
+     * @param callback
+     *            - receives the metacard once it is fetched
+     */
+    public void fetchMetacard(final String sourceId, Query query, ServerSession remote,
+            final Subject subject, final MetacardCallback callback) {
+        final Query fetchQuery = new QueryImpl(query, query.getStartIndex(), query.getPageSize(),
+                query.getSortBy(), false, query.getTimeoutMillis() > 0 ?
+                Math.min(query.getTimeoutMillis(), METACARD_FETCH_TIMEOUT_MILLIS) :
+                METACARD_FETCH_TIMEOUT_MILLIS);
+        final String fetchSourceId;
+        final Map<String, Serializable> properties;
+        if (sourceId != null) {
+            fetchSourceId = sourceId;
+            properties = new HashMap<>();
+        } else if (!cacheDisabled) {
+            fetchSourceId = null;
+            properties = new HashMap<>(CACHE_PROPERTIES);
+        } else {
+            fetchSourceId = framework.getId();
+            properties = new HashMap<>();
+        }
+
+        Runnable fetch = new Runnable() {
+            @Override
+            public void run() {
+                callback.onMetacard(getMetacard(fetchSourceId, fetchQuery, subject, properties));
+            }
+        };
+        try {
+            queryScheduler.submit(getUserId(remote, subject),
+                    fetchSourceId == null ? CACHE_SOURCE_ID : fetchSourceId, fetch);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Unable to schedule the fetch of a metacard from {}.", fetchSourceId, e);
+            callback.onMetacard(null);
+        }
+    }
+
+    /**
+     * @return the JSON of the first metacard found, or null if there is none
+     */
+    private JSONObject getMetacard(String sourceId, Query query, Subject subject,
+            Map<String, Serializable> properties) {
+        SearchRequest request = new SearchRequest(sourceId == null ?
+                framework.getSourceIds() :
+                Collections.singleton(sourceId), query, UUID.randomUUID().toString());
+        QueryResponse response = executeQuery(sourceId, request, query, subject, properties);
+        if (response.getResults().isEmpty()) {
+            return null;
+        }
+
+        try {
+            JSONObject metacardJson = new JSONObject();
+            metacardJson.putAll(getMetacardJson(response.getResults().get(0), 0,
+                    Collections.<String>emptySet()));
+            return metacardJson;
+        } catch (CatalogTransformerException e) {
+            LOGGER.warn("Failed to transform metacard of query {}.", query, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the serialized schemas of metacard types previously sent by reference.
+     *
+     * @param names
+     *            - names of the metacard types
+     * @return schemas and versions of the types that are known, keyed by type name
+     */
+    public JSONObject getMetacardTypeSchemas(Collection<String> names) {
+        JSONObject typesObject = new JSONObject();
+        JSONObject versionsObject = new JSONObject();
+
+        for (String name : names) {
+            MetacardTypeRegistry.Schema schema = metacardTypeRegistry.getSchema(name);
+            if (schema != null) {
+                typesObject.put(name, schema.getJson());
+                versionsObject.put(name, schema.getVersion());
+            }
+        }
+
+        JSONObject rootObject = new JSONObject();
+        rootObject.put(Search.METACARD_TYPES, typesObject);
+        rootObject.put(Search.METACARD_TYPE_VERSIONS, versionsObject);
+        return rootObject;
+    }
+
+    public CatalogFramework getFramework() {
+        return framework;
+    }
 
-                LOGGER.debug("Sending query: {}", query);
-                response = framework.query(request);
+    public void setBayeuxServer(BayeuxServer bayeuxServer) {
+        channelPublisher.setBayeuxServer(bayeuxServer);
+    }
+
+    public void setCacheDisabled(Boolean cacheDisabled) {
+        this.cacheDisabled = cacheDisabled;
+    }
+
+    public void setMaxConcurrentQueries(Integer maxConcurrentQueries) {
+        if (maxConcurrentQueries == null || maxConcurrentQueries < 1) {
+            LOGGER.warn("Ignoring invalid maximum number of concurrent queries: {}",
+                    maxConcurrentQueries);
+            return;
+        }
+
+        if (executorService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executorService;
+            if (maxConcurrentQueries > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(maxConcurrentQueries);
+                pool.setCorePoolSize(maxConcurrentQueries);
+            } else {
+                pool.setCorePoolSize(maxConcurrentQueries);
+                pool.setMaximumPoolSize(maxConcurrentQueries);
             }
-        } catch (UnsupportedQueryException | FederationException e) {
-            LOGGER.warn("Error executing query", e);
-            response.getProcessingDetails().add(new ProcessingDetailsImpl(sourceId, e));
-        } catch (SourceUnavailableException e) {
-            LOGGER.warn("Error executing query because the underlying source was unavailable.", e);
-            response.getProcessingDetails().add(new ProcessingDetailsImpl(sourceId, e));
-        } catch (RuntimeException e) {
-            // Account for any runtime exceptions and send back a server error
-            // this prevents full stacktraces returning to the client
-            // this allows for a graceful server error to be returned
-            LOGGER.warn("RuntimeException on executing query", e);
-            response.getProcessingDetails().add(new ProcessingDetailsImpl(sourceId, e));
         }
-        long estimatedTime = System.currentTimeMillis() - startTime;
-        response.getProperties().put("elapsed", estimatedTime);
+        queryScheduler.setMaxConcurrentQueries(maxConcurrentQueries);
 
-        return response;
+        ExecutorService attemptExecutor = sourceQueryExecutor;
+        if (attemptExecutor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) attemptExecutor).setMaximumPoolSize(maxConcurrentQueries);
+        }
     }
 
-    private QueryResponse getEmptyResponse(String sourceId) {
-        // No query was specified
-        QueryRequest queryRequest = new QueryRequestImpl(null, false,
-                Collections.singletonList(sourceId), null);
+    /**
+     * Runs the query tasks on virtual threads instead of the bounded worker pool, so queries
+     * waiting on slow sources do not hold platform threads. The maximum number of concurrent
+     * queries still applies. Falls back to the worker pool on JVMs without virtual threads.
+     */
+    public void setVirtualThreads(Boolean virtualThreads) {
+        if (virtualThreads == null) {
+            return;
+        }
 
-        // Create a dummy QueryResponse with zero results
-        return new QueryResponseImpl(queryRequest, new ArrayList<Result>(), 0);
+        ExecutorService previous = null;
+        synchronized (this) {
+            if (virtualThreads && virtualThreadExecutor == null) {
+                virtualThreadExecutor = VirtualThreads.newExecutor();
+                if (virtualThreadExecutor == null) {
+                    LOGGER.warn("Virtual threads are not supported by this JVM, "
+                            + "queries will run on the worker pool.");
+                    return;
+                }
+                queryScheduler.setExecutorService(virtualThreadExecutor);
+            } else if (!virtualThreads && virtualThreadExecutor != null) {
+                previous = virtualThreadExecutor;
+                virtualThreadExecutor = null;
+                queryScheduler.setExecutorService(executorService);
+            }
+        }
+
+        if (previous != null) {
+            // let the running queries finish
+            previous.shutdown();
+        }
     }
 
-    private JSONObject transform(Search search, SearchRequest searchRequest) throws
-            CatalogTransformerException {
+    public void setMaxQueuedQueries(Integer maxQueuedQueries) {
+        if (maxQueuedQueries != null && maxQueuedQueries >= 0) {
+            queryScheduler.setMaxQueuedQueries(maxQueuedQueries);
+        }
+    }
 
-        SourceResponse upstreamResponse = search.getCompositeQueryResponse();
-        Map<String, MetacardType> metaTypes = new HashMap<String, MetacardType>();
-        if (upstreamResponse == null) {
-            throw new CatalogTransformerException(
-                    "Cannot transform null " + SourceResponse.class.getName());
+    public void setMaxQueuedQueriesPerUser(Integer maxQueuedQueriesPerUser) {
+        if (maxQueuedQueriesPerUser != null && maxQueuedQueriesPerUser >= 0) {
+            queryScheduler.setMaxQueuedQueriesPerUser(maxQueuedQueriesPerUser);
         }
+    }
 
-        JSONObject rootObject = new JSONObject();
+    public void setMetacardJsonCacheSize(Integer metacardJsonCacheSize) {
+        if (metacardJsonCacheSize != null) {
+            metacardJsonCache.configure(metacardJsonCacheSize, metacardJsonCache.getMaxBytes());
+        }
+    }
 
-        addObject(rootObject, Search.HITS, search.getHits());
-        addObject(rootObject, Search.ID, searchRequest.getId());
-        addObject(rootObject, Search.RESULTS,
-                getResultList(upstreamResponse.getResults(), metaTypes));
-        addObject(rootObject, Search.STATUS, getQueryStatus(search.getQueryStatus()));
-        addObject(rootObject, Search.METACARD_TYPES, getMetacardTypes(metaTypes.values()));
+    public void setMetacardJsonCacheMegabytes(Integer metacardJsonCacheMegabytes) {
+        if (metacardJsonCacheMegabytes != null) {
+            metacardJsonCache.configure(metacardJsonCache.getMaxEntries(),
+                    metacardJsonCacheMegabytes * BYTES_PER_MEGABYTE);
+        }
+    }
 
-        LOGGER.debug(rootObject.toJSONString());
+    public MetacardJsonCache getMetacardJsonCache() {
+        return metacardJsonCache;
+    }
 
-        return rootObject;
+    public void setFilterCacheSize(Integer filterCacheSize) {
+        if (filterCacheSize != null) {
+            filterCache.configure(filterCacheSize);
+        }
     }
 
-    private JSONArray getQueryStatus(Map<String, QueryStatus> queryStatus) {
-        JSONArray statuses = new JSONArray();
+    public FilterCache getFilterCache() {
+        return filterCache;
+    }
 
-        for (String key : queryStatus.keySet()) {
-            QueryStatus status = queryStatus.get(key);
+    public void setSourceStatusRefreshInterval(Long sourceStatusRefreshInterval) {
+        if (sourceStatusRefreshInterval != null && sourceStatusRefreshInterval >= 0) {
+            sourceAvailability.configure(sourceStatusRefreshInterval,
+                    sourceAvailability.getMaxAgeMillis());
+        }
+    }
 
-            JSONObject statusObject = new JSONObject();
+    public void setSourceStatusMaxAge(Long sourceStatusMaxAge) {
+        if (sourceStatusMaxAge != null && sourceStatusMaxAge >= 0) {
+            sourceAvailability.configure(sourceAvailability.getRefreshIntervalMillis(),
+                    sourceStatusMaxAge);
+        }
+    }
 
-            addObject(statusObject, Search.ID, status.getSourceId());
-            if (status.isDone()) {
-                addObject(statusObject, Search.RESULTS, status.getResultCount());
-                addObject(statusObject, Search.HITS, status.getHits());
-                addObject(statusObject, Search.ELAPSED, status.getElapsed());
-            }
-            addObject(statusObject, Search.STATE, status.getState());
+    public SourceAvailability getSourceAvailability() {
+        return sourceAvailability;
+    }
 
-            statuses.add(statusObject);
+    public void setSearchStoreSize(Integer searchStoreSize) {
+        if (searchStoreSize != null && searchStore instanceof CachingSearchStore) {
+            CachingSearchStore store = (CachingSearchStore) searchStore;
+            store.configure(searchStoreSize, store.getMaxBytes(), store.getTimeToLiveMillis());
         }
+    }
 
-        return statuses;
+    public void setSearchStoreMegabytes(Integer searchStoreMegabytes) {
+        if (searchStoreMegabytes != null && searchStore instanceof CachingSearchStore) {
+            CachingSearchStore store = (CachingSearchStore) searchStore;
+            store.configure(store.getMaxEntries(), searchStoreMegabytes * BYTES_PER_MEGABYTE,
+                    store.getTimeToLiveMillis());
+        }
     }
 
-    private JSONArray getResultList(List<Result> results,
-            Map<String, MetacardType> metaTypes) throws CatalogTransformerException {
-        JSONArray resultsList = new JSONArray();
-        if (results != null) {
-            for (Result result : results) {
-                if (result == null) {
-                    throw new CatalogTransformerException(
-                            "Cannot transform null " + Result.class.getName());
-                }
-                JSONObject jsonObj = convertToJSON(result, metaTypes);
-                if (jsonObj != null) {
-                    resultsList.add(jsonObj);
-                }
-            }
+    public void setSearchStoreTtlMinutes(Integer searchStoreTtlMinutes) {
+        if (searchStoreTtlMinutes != null && searchStore instanceof CachingSearchStore) {
+            CachingSearchStore store = (CachingSearchStore) searchStore;
+            store.configure(store.getMaxEntries(), store.getMaxBytes(),
+                    TimeUnit.MINUTES.toMillis(searchStoreTtlMinutes));
         }
-        return resultsList;
     }
 
-    private JSONObject convertToJSON(Result result, Map<String, MetacardType> metaTypes) throws
-            CatalogTransformerException {
-        JSONObject rootObject = new JSONObject();
+    public void setAdaptiveSourceDeadlines(Boolean adaptiveSourceDeadlines) {
+        if (adaptiveSourceDeadlines != null) {
+            this.adaptiveSourceDeadlines = adaptiveSourceDeadlines;
+        }
+    }
 
-        addObject(rootObject, Search.DISTANCE, result.getDistanceInMeters());
-        addObject(rootObject, Search.RELEVANCE, result.getRelevanceScore());
+    public void setSourceDeadlineMultiplier(Double sourceDeadlineMultiplier) {
+        if (sourceDeadlineMultiplier != null && sourceDeadlineMultiplier >= 1) {
+            this.sourceDeadlineMultiplier = sourceDeadlineMultiplier;
+        }
+    }
 
-        org.json.simple.JSONObject metacardJson = GeoJsonMetacardTransformer
-                .convertToJSON(result.getMetacard());
-        metacardJson.put(Search.ACTIONS, getActions(result.getMetacard()));
+    public void setMinimumSourceDeadline(Long minimumSourceDeadline) {
+        if (minimumSourceDeadline != null && minimumSourceDeadline >= 0) {
+            this.minimumSourceDeadlineMillis = minimumSourceDeadline;
+        }
+    }
 
-        Attribute cachedDate = result.getMetacard().getAttribute(Search.CACHED);
-        if (cachedDate != null && cachedDate.getValue() != null) {
-            metacardJson.put(Search.CACHED,
-                    ISO_8601_DATE_FORMAT.print(new DateTime(cachedDate.getValue())));
-        } else {
-            metacardJson.put(Search.CACHED, ISO_8601_DATE_FORMAT.print(new DateTime()));
+    public void setHedgedQueries(Boolean hedgedQueries) {
+        if (hedgedQueries != null) {
+            this.hedgedQueries = hedgedQueries;
         }
+    }
 
-        addObject(rootObject, Search.METACARD, metacardJson);
+    public void setMinimumPushInterval(Long minimumPushInterval) {
+        if (minimumPushInterval != null && minimumPushInterval >= 0) {
+            pushThrottle.setMinimumInterval(minimumPushInterval);
+        }
+    }
 
-        if (result.getMetacard().getMetacardType() != null && !StringUtils
-                .isBlank(result.getMetacard().getMetacardType().getName())) {
-            metaTypes.put(result.getMetacard().getMetacardType().getName(),
-                    result.getMetacard().getMetacardType());
+    public void setCacheRequeryDelay(Long cacheRequeryDelay) {
+        if (cacheRequeryDelay != null && cacheRequeryDelay >= 0) {
+            this.cacheRequeryDelay = cacheRequeryDelay;
         }
-        return rootObject;
     }
 
-    private JSONArray getActions(Metacard metacard) {
-        JSONArray actionsJson = new JSONArray();
+    public void setCoalesceQueries(Boolean coalesceQueries) {
+        if (coalesceQueries != null) {
+            this.coalesceQueries = coalesceQueries;
+        }
+    }
 
-        List<Action> actions = actionRegistry.list(metacard);
-        for (Action action : actions) {
-            JSONObject actionJson = new JSONObject();
-            actionJson.put(Search.ACTIONS_ID, action.getId());
-            actionJson.put(Search.ACTIONS_TITLE, action.getTitle());
-            actionJson.put(Search.ACTIONS_DESCRIPTION, action.getDescription());
-            actionJson.put(Search.ACTIONS_URL, action.getUrl());
-            actionsJson.add(actionJson);
+    public void setClusterMaxResults(Integer clusterMaxResults) {
+        if (clusterMaxResults != null && clusterMaxResults >= 0) {
+            this.clusterMaxResults = clusterMaxResults;
         }
-        return actionsJson;
     }
 
-    private JSONObject getMetacardTypes(Collection<MetacardType> types) throws
-            CatalogTransformerException {
-        JSONObject typesObject = new JSONObject();
+    public void setResultChunkSize(Integer resultChunkSize) {
+        if (resultChunkSize != null && resultChunkSize > 0) {
+            this.resultChunkSize = resultChunkSize;
+        }
+    }
 
-        for (MetacardType type : types) {
-            JSONObject typeObj = convertToJSON(type);
-            if (typeObj != null) {
-                typesObject.put(type.getName(), typeObj);
-            }
+    public void setResultWindowPages(Integer resultWindowPages) {
+        if (resultWindowPages != null && resultWindowPages >= 0) {
+            this.resultWindowPages = resultWindowPages;
         }
+    }
 
-        return typesObject;
+    public void setResultWindowTtlSeconds(Integer resultWindowTtlSeconds) {
+        if (resultWindowTtlSeconds != null && resultWindowTtlSeconds > 0) {
+            resultWindows.configure(DEFAULT_RESULT_WINDOW_MEGABYTES * BYTES_PER_MEGABYTE,
+                    TimeUnit.SECONDS.toMillis(resultWindowTtlSeconds));
+        }
     }
 
-    private JSONObject convertToJSON(MetacardType metacardType) throws CatalogTransformerException {
-        JSONObject fields = new JSONObject();
+    public ResultWindowCache getResultWindows() {
+        return resultWindows;
+    }
 
-        for (AttributeDescriptor descriptor : metacardType.getAttributeDescriptors()) {
-            JSONObject description = new JSONObject();
-            description.put("format", descriptor.getType().getAttributeFormat().toString());
-            description.put("indexed", descriptor.isIndexed());
+    public QueryCoalescer getQueryCoalescer() {
+        return queryCoalescer;
+    }
 
-            fields.put(descriptor.getName(), description);
+    public void setDeduplicateResults(Boolean deduplicateResults) {
+        if (deduplicateResults != null) {
+            this.deduplicateResults = deduplicateResults;
         }
-        return fields;
     }
 
-    public CatalogFramework getFramework() {
-        return framework;
+    public void setDeduplicationAttribute(String deduplicationAttribute) {
+        this.deduplicationAttribute = StringUtils.isBlank(deduplicationAttribute) ?
+                Metacard.ID :
+                deduplicationAttribute.trim();
     }
 
-    public synchronized void setBayeuxServer(BayeuxServer bayeuxServer) {
-        this.bayeuxServer = bayeuxServer;
+    public SourceLatencyTracker getLatencyTracker() {
+        return latencyTracker;
     }
 
-    public void setCacheDisabled(Boolean cacheDisabled) {
-        this.cacheDisabled = cacheDisabled;
+    public SearchStore getSearchStore() {
+        return searchStore;
+    }
+
+    public void setSearchStore(SearchStore searchStore) {
+        this.searchStore = searchStore;
+        searchStore.setEvictionListener(new SearchEvictionListener());
     }
 
     // Override for unit testing
     ExecutorService getExecutorService() {
-        return Executors.newCachedThreadPool();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENT_QUERIES,
+                DEFAULT_MAX_CONCURRENT_QUERIES, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Drops the delta state of searches the store evicted, so it does not outlive the search.
+     */
+    private class SearchEvictionListener implements SearchStore.EvictionListener {
+
+        @Override
+        public void searchEvicted(String id, Search search) {
+            LOGGER.debug("Search {} was evicted before it finished.", id);
+            ActiveSearch activeSearch = activeSearches.get(id);
+            if (activeSearch != null && activeSearch.request == search.getSearchRequest()
+                    && activeSearches.remove(id, activeSearch)) {
+                // its state is gone, so its remaining responses could only build a partial search
+                LOGGER.warn("Search {} was evicted while it was running and has been cancelled."
+                        + " The search store may be too small.", id);
+                activeSearch.cancel();
+                untrackSession(activeSearch.sessionId, id);
+            }
+            deltaEncoders.remove(id);
+        }
+    }
+
+    /**
+     * Re-queries the cache of a search after its sources have updated the index. Only one cache
+     * query runs at a time for a search; sources that finish while it runs are picked up by a
+     * single follow-up query instead of querying the cache once each.
+     */
+    private class CacheRefresh {
+
+        private final SearchRequest request;
+
+        private final String userId;
+
+        private final Subject subject;
+
+        private final ServerSession session;
+
+        // number of refreshes asked for that have not been picked up by a cache query yet
+        private final AtomicInteger pending = new AtomicInteger();
+
+        // index responses of the sources that finished since the last cache query
+        private final Queue<StatusUpdate> statusUpdates = new ConcurrentLinkedQueue<>();
+
+        CacheRefresh(SearchRequest request, String userId, Subject subject,
+                ServerSession session) {
+            this.request = request;
+            this.userId = userId;
+            this.subject = subject;
+            this.session = session;
+        }
+
+        /**
+         * Asks for a cache query. If one is already running or waiting for the requery delay,
+         * the caller returns immediately and that one picks the request up. After the delay the
+         * cache query is queued on the scheduler again, so no worker is held while waiting.
+         *
+         * @param sourceId
+         *            - source that finished updating the index, null for the initial cache query
+         * @param indexResponse
+         *            - the response of the source
+         */
+        void request(String sourceId, QueryResponse indexResponse) {
+            if (sourceId != null) {
+                statusUpdates.add(new StatusUpdate(sourceId, indexResponse));
+            }
+
+            if (pending.getAndIncrement() > 0) {
+                LOGGER.debug("Cache query already running for search {}, {} will be picked up "
+                        + "by the next one.", request.getId(), sourceId);
+                return;
+            }
+
+            if (cacheRequeryDelay > 0 && sourceId != null) {
+                // give other sources finishing around the same time a chance to join
+                try {
+                    pushScheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            submitDrain();
+                        }
+                    }, cacheRequeryDelay, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("Unable to delay the cache query of search {}.",
+                            request.getId(), e);
+                }
+            }
+            drain();
+        }
+
+        private void submitDrain() {
+            boolean queued = submitQuery(request, userId, CACHE_SOURCE_ID, session,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            drain();
+                        }
+                    });
+            if (!queued) {
+                // the pending status updates would otherwise never be pushed
+                drain();
+            }
+        }
+
+        private void drain() {
+            int observed;
+            do {
+                observed = pending.get();
+                refresh();
+            } while (pending.addAndGet(-observed) > 0);
+        }
+
+        private void refresh() {
+            List<StatusUpdate> updates = new ArrayList<>();
+            StatusUpdate update;
+            while ((update = statusUpdates.poll()) != null) {
+                updates.add(update);
+            }
+
+            if (isCancelled(request, CACHE_SOURCE_ID)) {
+                return;
+            }
+            QueryResponse cachedResponse = executeQuery(null, request, subject,
+                    new HashMap<>(CACHE_PROPERTIES));
+            if (isCancelled(request, CACHE_SOURCE_ID)) {
+                return;
+            }
+            ResultDeduplicator deduplicator = deduplicate(request, cachedResponse);
+
+            try {
+                Search search = addQueryResponseToSearch(request, cachedResponse);
+                updateDuplicates(search, deduplicator);
+                boolean failed = false;
+                for (StatusUpdate statusUpdate : updates) {
+                    search.updateStatus(statusUpdate.sourceId, statusUpdate.indexResponse);
+                    failed |= search.isFailed(statusUpdate.sourceId);
+                }
+                requestPush(search, request, session, failed);
+                if (!updates.isEmpty() && search.isFinished()) {
+                    summarizeAndFinish(search, request, userId, subject, session);
+                }
+            } catch (InterruptedException e) {
+                LOGGER.error("Failed adding cached search results.", e);
+            }
+        }
+    }
+
+    private static class StatusUpdate {
+
+        private final String sourceId;
+
+        private final QueryResponse indexResponse;
+
+        StatusUpdate(String sourceId, QueryResponse indexResponse) {
+            this.sourceId = sourceId;
+            this.indexResponse = indexResponse;
+        }
+    }
+
+    /**
+     * One attempt of a query on a source, run on its own thread so the worker waiting for it can
+     * give up at the deadline. An attempt the worker gave up on while it is still running keeps
+     * a worker slot until its thread is done, so abandoned attempts count against the maximum
+     * number of concurrent queries.
+     */
+    private class SourceAttempt implements Runnable {
+
+        private final Callable<QueryResponse> query;
+
+        private final BlockingQueue<SourceAttempt> completed;
+
+        private QueryResponse response;
+
+        private Exception failure;
+
+        private Thread thread;
+
+        private boolean finished = false;
+
+        private boolean abandoned = false;
+
+        private boolean holdsSlot;
+
+        SourceAttempt(Callable<QueryResponse> query, BlockingQueue<SourceAttempt> completed,
+                boolean holdsSlot) {
+            this.query = query;
+            this.completed = completed;
+            this.holdsSlot = holdsSlot;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (this) {
+                    if (abandoned) {
+                        return;
+                    }
+                    thread = Thread.currentThread();
+                }
+                response = query.call();
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                complete();
+            }
+        }
+
+        private void complete() {
+            boolean release;
+            synchronized (this) {
+                thread = null;
+                finished = true;
+                release = holdsSlot;
+                holdsSlot = false;
+            }
+            if (release) {
+                queryScheduler.releaseSlot();
+            }
+            completed.add(this);
+        }
+
+        /**
+         * Interrupts the attempt if it is still running, and makes it hold a worker slot until
+         * it is done.
+         */
+        synchronized void abandon() {
+            if (finished || abandoned) {
+                return;
+            }
+            abandoned = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            if (!holdsSlot) {
+                holdsSlot = true;
+                queryScheduler.acquireSlot();
+            }
+        }
+
+        /**
+         * @return the response of the attempt, once it is completed
+         */
+        QueryResponse getResponse() throws ExecutionException {
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Receives a metacard fetched by {@link #fetchMetacard}.
+     */
+    public interface MetacardCallback {
+
+        /**
+         * @param metacard
+         *            - the JSON of the metacard, or null if it was not found or could not be
+         *            fetched
+         */
+        void onMetacard(JSONObject metacard);
+    }
+
+    /**
+     * A search that is running, with the source query tasks that can still be cancelled.
+     */
+    private static class ActiveSearch {
+
+        private final SearchRequest request;
+
+        private final String sessionId;
+
+        private final Queue<Future<?>> tasks = new ConcurrentLinkedQueue<>();
+
+        ActiveSearch(SearchRequest request, String sessionId) {
+            this.request = request;
+            this.sessionId = sessionId;
+        }
+
+        void addTask(Future<?> task) {
+            tasks.add(task);
+            if (request.isCancelled()) {
+                task.cancel(true);
+            }
+        }
+
+        void cancel() {
+            request.cancel();
+            Future<?> task;
+            while ((task = tasks.poll()) != null) {
+                task.cancel(true);
+            }
+        }
     }
 }
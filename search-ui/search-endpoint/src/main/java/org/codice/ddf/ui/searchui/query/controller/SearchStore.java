@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import org.codice.ddf.ui.searchui.query.model.Search;
+import org.codice.ddf.ui.searchui.query.model.SearchRequest;
+
+/**
+ * Holds the state of the searches that are in progress, keyed by search id. Implementations must
+ * be safe to use from the threads of every source of every search at once.
+ */
+public interface SearchStore {
+
+    /**
+     * Returns the search for the id of the request, creating it if there is none. When several
+     * threads ask for the same new search at once only one search is created. A search left
+     * behind by a cancelled request with the same id is replaced. A cancelled request whose
+     * search is no longer in the store gets a new search that is not stored, so a search that was
+     * evicted while it was running is not brought back with only part of its state.
+     *
+     * @param request
+     *            - the request the search belongs to
+     * @return the search for the request id
+     */
+    Search getOrCreate(SearchRequest request);
+
+    /**
+     * @param id
+     *            - id of the search
+     * @return the search, or null if there is none
+     */
+    Search get(String id);
+
+    /**
+     * Tells the store that a search changed, so its estimated size can be measured again. Does
+     * nothing if the search is no longer in the store.
+     *
+     * @param search
+     *            - the search that changed
+     */
+    void update(Search search);
+
+    /**
+     * Removes a search. The {@link EvictionListener} is not called for searches removed this way.
+     *
+     * @param id
+     *            - id of the search
+     */
+    void remove(String id);
+
+    /**
+     * @param listener
+     *            - called when the store drops a search on its own because it expired or the store
+     *            is full
+     */
+    void setEvictionListener(EvictionListener listener);
+
+    /**
+     * @return number of searches in the store
+     */
+    long size();
+
+    /**
+     * @return number of searches dropped because they expired or the store was full
+     */
+    long getEvictionCount();
+
+    /**
+     * @return number of times threads raced to create the same search
+     */
+    long getContentionCount();
+
+    /**
+     * Called when a {@link SearchStore} drops a search on its own. The search may still be
+     * running, in which case the listener should cancel it.
+     */
+    interface EvictionListener {
+
+        void searchEvicted(String id, Search search);
+    }
+}
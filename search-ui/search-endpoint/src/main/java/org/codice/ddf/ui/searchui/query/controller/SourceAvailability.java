@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.operation.SourceInfoResponse;
+import ddf.catalog.operation.impl.SourceInfoRequestEnterprise;
+import ddf.catalog.source.SourceDescriptor;
+import ddf.catalog.source.SourceUnavailableException;
+
+/**
+ * The SourceAvailability keeps a snapshot of the ids of the available sources, so an enterprise
+ * search does not wait for the status of every federated source to be collected. The snapshot is
+ * refreshed in the background at a fixed interval and swapped in whole once collected. A snapshot
+ * older than the staleness bound is not used; until a fresh one is collected, all the sources are
+ * queried, the same as when their status cannot be collected.
+ */
+public class SourceAvailability {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SourceAvailability.class);
+
+    private final CatalogFramework framework;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile long refreshIntervalMillis;
+
+    private volatile long maxAgeMillis;
+
+    private ScheduledFuture<?> refreshTask;
+
+    private boolean started = false;
+
+    /**
+     * Create a new SourceAvailability
+     *
+     * @param framework
+     *            - framework collecting the status of the sources
+     * @param scheduler
+     *            - runs the refreshes, so they never run on the thread of a search
+     * @param refreshIntervalMillis
+     *            - time between refreshes, 0 collects the status on every search instead
+     * @param maxAgeMillis
+     *            - age beyond which a snapshot is no longer used
+     */
+    public SourceAvailability(CatalogFramework framework, ScheduledExecutorService scheduler,
+            long refreshIntervalMillis, long maxAgeMillis) {
+        this.framework = framework;
+        this.scheduler = scheduler;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Changes the refresh interval and staleness bound. The current snapshot is kept.
+     */
+    public synchronized void configure(long refreshIntervalMillis, long maxAgeMillis) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        if (started) {
+            schedule();
+        }
+    }
+
+    /**
+     * @return the ids of the sources that were available when last collected, or of all the
+     *         sources if there is no snapshot recent enough
+     */
+    public Set<String> getSourceIds() {
+        if (refreshIntervalMillis <= 0) {
+            Set<String> sourceIds = collect();
+            return sourceIds == null ? framework.getSourceIds() : sourceIds;
+        }
+
+        start();
+        Snapshot current = snapshot.get();
+        if (current != null && now() - current.collected <= maxAgeMillis) {
+            return current.sourceIds;
+        }
+
+        LOGGER.debug("No recent snapshot of the available sources, querying all sources.");
+        refreshLater();
+        return framework.getSourceIds();
+    }
+
+    /**
+     * Collects the status of the sources and replaces the snapshot, unless a refresh is already
+     * running. The snapshot is kept if the status cannot be collected.
+     */
+    public void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Set<String> sourceIds = collect();
+            if (sourceIds != null) {
+                snapshot.set(new Snapshot(sourceIds, now()));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to refresh the snapshot of the available sources.", e);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private synchronized void start() {
+        if (!started) {
+            started = true;
+            schedule();
+        }
+    }
+
+    private synchronized void schedule() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+        if (refreshIntervalMillis <= 0) {
+            return;
+        }
+
+        try {
+            refreshTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Unable to schedule the refresh of the available sources.", e);
+        }
+    }
+
+    private void refreshLater() {
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Unable to refresh the available sources.", e);
+        }
+    }
+
+    /**
+     * @return the ids of the available sources, or null if their status could not be collected
+     */
+    private Set<String> collect() {
+        SourceInfoResponse sourceInfo;
+        try {
+            sourceInfo = framework.getSourceInfo(new SourceInfoRequestEnterprise(true));
+        } catch (SourceUnavailableException e) {
+            LOGGER.debug("Exception while getting source status. Defaulting to all sources. "
+                    + "This could include unavailable sources.", e);
+            return null;
+        }
+        if (sourceInfo == null) {
+            return null;
+        }
+
+        Set<String> sourceIds = new HashSet<String>();
+        for (SourceDescriptor source : sourceInfo.getSourceInfo()) {
+            if (source.isAvailable()) {
+                sourceIds.add(source.getSourceId());
+            }
+        }
+        return Collections.unmodifiableSet(sourceIds);
+    }
+
+    private static class Snapshot {
+
+        private final Set<String> sourceIds;
+
+        private final long collected;
+
+        Snapshot(Set<String> sourceIds, long collected) {
+            this.sourceIds = sourceIds;
+            this.collected = collected;
+        }
+    }
+}
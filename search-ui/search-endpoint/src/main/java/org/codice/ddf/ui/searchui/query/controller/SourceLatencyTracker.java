@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The SourceLatencyTracker keeps the most recent query times of each source so the search
+ * controller can derive per-source deadlines and hedging delays from their percentiles.
+ */
+public class SourceLatencyTracker {
+
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    private final int windowSize;
+
+    private final int minimumSamples;
+
+    /**
+     * Create a new SourceLatencyTracker
+     *
+     * @param windowSize
+     *            - number of recent query times kept per source
+     * @param minimumSamples
+     *            - number of query times needed before percentiles are reported for a source
+     */
+    public SourceLatencyTracker(int windowSize, int minimumSamples) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumSamples = Math.max(1, Math.min(this.windowSize, minimumSamples));
+    }
+
+    /**
+     * Records the time a query on a source took.
+     *
+     * @param sourceId
+     *            - the source that was queried
+     * @param elapsedMillis
+     *            - how long the query took
+     */
+    public void record(String sourceId, long elapsedMillis) {
+        if (sourceId == null || elapsedMillis < 0) {
+            return;
+        }
+
+        Window window = windows.get(sourceId);
+        if (window == null) {
+            window = new Window(windowSize);
+            Window existing = windows.putIfAbsent(sourceId, window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        window.add(elapsedMillis);
+    }
+
+    /**
+     * @param sourceId
+     *            - the source
+     * @param percentile
+     *            - the percentile, between 0 and 100
+     * @return the query time of the source at the percentile, or -1 if too few queries were
+     * recorded for the source
+     */
+    public long getPercentile(String sourceId, double percentile) {
+        Window window = sourceId == null ? null : windows.get(sourceId);
+        if (window == null) {
+            return -1;
+        }
+
+        long[] samples = window.samples();
+        if (samples.length < minimumSamples) {
+            return -1;
+        }
+
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+        return samples[Math.max(0, Math.min(samples.length - 1, index))];
+    }
+
+    private static class Window {
+
+        private final long[] samples;
+
+        private int next = 0;
+
+        private int count = 0;
+
+        Window(int size) {
+            samples = new long[size];
+        }
+
+        synchronized void add(long sample) {
+            samples[next] = sample;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized long[] samples() {
+            return Arrays.copyOf(samples, count);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 import java.util.Dictionary;
 import java.util.Hashtable;
 
+import javax.servlet.Filter;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 
@@ -28,12 +29,15 @@
 import org.codice.ddf.ui.searchui.query.service.UserService;
 import org.codice.ddf.ui.searchui.query.service.WorkspaceService;
 import org.cometd.annotation.ServerAnnotationProcessor;
+import org.cometd.bayeux.Message;
+import org.cometd.bayeux.Session;
 import org.cometd.bayeux.server.BayeuxServer;
 import org.cometd.bayeux.server.ServerChannel;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
 import org.cometd.server.CometdServlet;
 import org.cometd.server.DefaultSecurityPolicy;
+import org.cometd.server.ServerSessionImpl;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.event.EventAdmin;
 import org.slf4j.Logger;
@@ -75,6 +79,18 @@ public class CometdEndpoint {
 
     private BundleContext bundleContext;
 
+    private final CompressionFilter compressionFilter = new CompressionFilter();
+
+    private long longPollTimeout = 30000;
+
+    private long longPollInterval = 0;
+
+    private long maxReconnectInterval = 10000;
+
+    private long maxLazyTimeout = 5000;
+
+    private volatile int maxSessionQueue = -1;
+
     /**
      * Create a new CometdEndpoint
      *
@@ -104,7 +120,20 @@ public void init() throws ServletException {
         properties.put("alias", "/cometd");
         properties.put("org.eclipse.jetty.servlet.SessionIdPathParameterName", "none");
         properties.put("org.eclipse.jetty.servlet.SessionPath", "/");
+        // transport options are read by CometD when the servlet is initialized
+        properties.put("init.timeout", String.valueOf(longPollTimeout));
+        properties.put("init.interval", String.valueOf(longPollInterval));
+        properties.put("init.maxInterval", String.valueOf(maxReconnectInterval));
+        properties.put("init.maxLazyTimeout", String.valueOf(maxLazyTimeout));
         bundleContext.registerService(Servlet.class, cometdServlet, properties);
+
+        Dictionary<String, Object> filterProperties = new Hashtable<>();
+        filterProperties.put("urlPatterns", new String[] {"/cometd/*"});
+        // a long poll delivers its messages when it is resumed, which dispatches it again as ASYNC
+        filterProperties.put("filter-mapping-dispatcher", new String[] {"REQUEST", "ASYNC"});
+        filterProperties.put("async-supported", "true");
+        bundleContext.registerService(Filter.class, compressionFilter, filterProperties);
+
         bayeuxServer = (BayeuxServer) cometdServlet.getServletContext()
                 .getAttribute(BayeuxServer.ATTRIBUTE);
 
@@ -148,6 +177,17 @@ public boolean canSubscribe(BayeuxServer server, ServerSession session,
 
             });
 
+            bayeuxServer.addListener(new BayeuxServer.SessionListener() {
+                @Override
+                public void sessionAdded(ServerSession session) {
+                    limitQueue(session);
+                }
+
+                @Override
+                public void sessionRemoved(ServerSession session, boolean timedout) {
+                }
+            });
+
             searchController.setBayeuxServer(bayeuxServer);
             searchService = new SearchService(filterBuilder, searchController);
             userService = new UserService(persistentStore);
@@ -160,6 +200,38 @@ public boolean canSubscribe(BayeuxServer server, ServerSession session,
         }
     }
 
+    /**
+     * Bounds the queue of messages waiting for a session that is not polling. Messages that
+     * arrive once the queue is full are dropped, so a client that stopped polling cannot hold an
+     * unbounded amount of search results in memory.
+     */
+    private void limitQueue(ServerSession session) {
+        if (maxSessionQueue < 0 || !(session instanceof ServerSessionImpl)) {
+            return;
+        }
+
+        ((ServerSessionImpl) session).setMaxQueue(maxSessionQueue);
+        session.addListener(new ServerSession.MaxQueueListener() {
+            @Override
+            public boolean queueMaxed(ServerSession session, Session from, Message message) {
+                LOGGER.warn("Dropping message on {} for session {}, its queue is full",
+                        message.getChannel(), session.getId());
+                return false;
+            }
+        });
+    }
+
+    /**
+     * The transport options are passed to CometD only when the servlet is registered, so a change
+     * made once the endpoint is running is kept for the next restart.
+     */
+    private void logRestartRequired(String setting) {
+        if (bayeuxServer != null) {
+            LOGGER.info("The change to {} applies when the search endpoint is restarted.",
+                    setting);
+        }
+    }
+
     public void destroy() {
         searchController.destroy();
     }
@@ -175,4 +247,150 @@ public SearchService getSearchService() {
     public void setCacheDisabled(Boolean cacheDisabled) {
         this.searchController.setCacheDisabled(cacheDisabled);
     }
+
+    public void setMaxConcurrentQueries(Integer maxConcurrentQueries) {
+        this.searchController.setMaxConcurrentQueries(maxConcurrentQueries);
+    }
+
+    public void setMaxQueuedQueries(Integer maxQueuedQueries) {
+        this.searchController.setMaxQueuedQueries(maxQueuedQueries);
+    }
+
+    public void setMaxQueuedQueriesPerUser(Integer maxQueuedQueriesPerUser) {
+        this.searchController.setMaxQueuedQueriesPerUser(maxQueuedQueriesPerUser);
+    }
+
+    public void setMetacardJsonCacheSize(Integer metacardJsonCacheSize) {
+        this.searchController.setMetacardJsonCacheSize(metacardJsonCacheSize);
+    }
+
+    public void setMetacardJsonCacheMegabytes(Integer metacardJsonCacheMegabytes) {
+        this.searchController.setMetacardJsonCacheMegabytes(metacardJsonCacheMegabytes);
+    }
+
+    public void setSearchStoreSize(Integer searchStoreSize) {
+        this.searchController.setSearchStoreSize(searchStoreSize);
+    }
+
+    public void setSearchStoreMegabytes(Integer searchStoreMegabytes) {
+        this.searchController.setSearchStoreMegabytes(searchStoreMegabytes);
+    }
+
+    public void setSearchStoreTtlMinutes(Integer searchStoreTtlMinutes) {
+        this.searchController.setSearchStoreTtlMinutes(searchStoreTtlMinutes);
+    }
+
+    public void setAdaptiveSourceDeadlines(Boolean adaptiveSourceDeadlines) {
+        this.searchController.setAdaptiveSourceDeadlines(adaptiveSourceDeadlines);
+    }
+
+    public void setSourceDeadlineMultiplier(Double sourceDeadlineMultiplier) {
+        this.searchController.setSourceDeadlineMultiplier(sourceDeadlineMultiplier);
+    }
+
+    public void setMinimumSourceDeadline(Long minimumSourceDeadline) {
+        this.searchController.setMinimumSourceDeadline(minimumSourceDeadline);
+    }
+
+    public void setHedgedQueries(Boolean hedgedQueries) {
+        this.searchController.setHedgedQueries(hedgedQueries);
+    }
+
+    public void setDeduplicateResults(Boolean deduplicateResults) {
+        this.searchController.setDeduplicateResults(deduplicateResults);
+    }
+
+    public void setDeduplicationAttribute(String deduplicationAttribute) {
+        this.searchController.setDeduplicationAttribute(deduplicationAttribute);
+    }
+
+    public void setCacheRequeryDelay(Long cacheRequeryDelay) {
+        this.searchController.setCacheRequeryDelay(cacheRequeryDelay);
+    }
+
+    public void setMinimumPushInterval(Long minimumPushInterval) {
+        this.searchController.setMinimumPushInterval(minimumPushInterval);
+    }
+
+    public void setVirtualThreads(Boolean virtualThreads) {
+        this.searchController.setVirtualThreads(virtualThreads);
+    }
+
+    public void setCoalesceQueries(Boolean coalesceQueries) {
+        this.searchController.setCoalesceQueries(coalesceQueries);
+    }
+
+    public void setResultWindowPages(Integer resultWindowPages) {
+        this.searchController.setResultWindowPages(resultWindowPages);
+    }
+
+    public void setResultWindowTtlSeconds(Integer resultWindowTtlSeconds) {
+        this.searchController.setResultWindowTtlSeconds(resultWindowTtlSeconds);
+    }
+
+    public void setResultChunkSize(Integer resultChunkSize) {
+        this.searchController.setResultChunkSize(resultChunkSize);
+    }
+
+    public void setLongPollTimeout(Long longPollTimeout) {
+        if (longPollTimeout != null) {
+            this.longPollTimeout = longPollTimeout;
+            logRestartRequired("longPollTimeout");
+        }
+    }
+
+    public void setLongPollInterval(Long longPollInterval) {
+        if (longPollInterval != null) {
+            this.longPollInterval = longPollInterval;
+            logRestartRequired("longPollInterval");
+        }
+    }
+
+    public void setMaxReconnectInterval(Long maxReconnectInterval) {
+        if (maxReconnectInterval != null) {
+            this.maxReconnectInterval = maxReconnectInterval;
+            logRestartRequired("maxReconnectInterval");
+        }
+    }
+
+    public void setMaxLazyTimeout(Long maxLazyTimeout) {
+        if (maxLazyTimeout != null) {
+            this.maxLazyTimeout = maxLazyTimeout;
+            logRestartRequired("maxLazyTimeout");
+        }
+    }
+
+    public void setMaxSessionQueue(Integer maxSessionQueue) {
+        if (maxSessionQueue != null) {
+            this.maxSessionQueue = maxSessionQueue;
+        }
+    }
+
+    public void setCompressResponses(Boolean compressResponses) {
+        if (compressResponses != null) {
+            this.compressionFilter.setEnabled(compressResponses);
+        }
+    }
+
+    public void setCompressionMinimumSize(Integer compressionMinimumSize) {
+        if (compressionMinimumSize != null) {
+            this.compressionFilter.setMinimumSize(compressionMinimumSize);
+        }
+    }
+
+    public void setFilterCacheSize(Integer filterCacheSize) {
+        this.searchController.setFilterCacheSize(filterCacheSize);
+    }
+
+    public void setSourceStatusRefreshInterval(Long sourceStatusRefreshInterval) {
+        this.searchController.setSourceStatusRefreshInterval(sourceStatusRefreshInterval);
+    }
+
+    public void setSourceStatusMaxAge(Long sourceStatusMaxAge) {
+        this.searchController.setSourceStatusMaxAge(sourceStatusMaxAge);
+    }
+
+    public void setClusterMaxResults(Integer clusterMaxResults) {
+        this.searchController.setClusterMaxResults(clusterMaxResults);
+    }
 }
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.endpoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The CompressionFilter gzips the HTTP responses of the CometD servlet, such as the long-polling
+ * responses that carry search results, when the client accepts it and the response is large
+ * enough to be worth compressing. Responses are buffered and written in one piece once the servlet
+ * returns. A long poll that is suspended writes nothing on its first pass and is compressed when it
+ * is dispatched again to deliver its messages, so the filter must be mapped for both the REQUEST
+ * and the ASYNC dispatcher types and support asynchronous requests.
+ */
+public class CompressionFilter implements Filter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompressionFilter.class);
+
+    private static final String GZIP = "gzip";
+
+    private volatile boolean enabled;
+
+    private volatile int minimumSize = 1024;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+        if (!enabled || !(request instanceof HttpServletRequest) || !acceptsGzip(
+                (HttpServletRequest) request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        BufferedResponse buffered = new BufferedResponse(httpResponse);
+        chain.doFilter(request, buffered);
+        buffered.finish();
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param minimumSize
+     *            - size in bytes below which responses are sent uncompressed
+     */
+    public void setMinimumSize(int minimumSize) {
+        this.minimumSize = Math.max(0, minimumSize);
+    }
+
+    private boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains(GZIP);
+    }
+
+    private class BufferedResponse extends HttpServletResponseWrapper {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        public BufferedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        buffer.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        buffer.write(b, off, len);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            if (writer == null) {
+                String encoding = getCharacterEncoding();
+                writer = new PrintWriter(new OutputStreamWriter(buffer,
+                        encoding == null ? "ISO-8859-1" : encoding));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            // the length is set once the body is known
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            // the buffer is written by finish()
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            buffer.reset();
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            buffer.reset();
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (buffer.size() == 0) {
+                return;
+            }
+
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            byte[] body = buffer.toByteArray();
+            if (body.length >= minimumSize && !response.isCommitted() && !response
+                    .containsHeader("Content-Encoding")) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(body);
+                }
+                LOGGER.trace("Compressed response from {} to {} bytes", body.length,
+                        compressed.size());
+                body = compressed.toByteArray();
+                response.setHeader("Content-Encoding", GZIP);
+            }
+            response.addHeader("Vary", "Accept-Encoding");
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+}
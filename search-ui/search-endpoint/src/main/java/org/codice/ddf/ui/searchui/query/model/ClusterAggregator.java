@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * The ClusterAggregator groups the locations of search results into the cells of a longitude and
+ * latitude grid, so a map can show where all the results of a search are without receiving every
+ * one of them. Each location counts once, in the cell holding the center of its bounding box.
+ * Locations are read straight from their WKT, the coordinates are all that is needed. The results
+ * of each source are clustered when the source responds, and the cells of all sources are added
+ * up when the clusters are sent, so a source that responds again replaces its earlier cells.
+ */
+public class ClusterAggregator {
+
+    public static final String COUNT = "count";
+
+    public static final String CENTROID = "centroid";
+
+    public static final String BBOX = "bbox";
+
+    private final double cellSize;
+
+    private final Map<String, Map<String, Cell>> sourceCells = new LinkedHashMap<>();
+
+    /**
+     * @param cellSize
+     *            - width and height of the grid cells, in degrees
+     */
+    public ClusterAggregator(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Clusters the locations of the results of a source, replacing what was clustered for it
+     * before. Results without a location are ignored.
+     */
+    public void add(String sourceId, List<Result> results) {
+        Map<String, Cell> cells = new LinkedHashMap<>();
+        for (Result result : results) {
+            Metacard metacard = result == null ? null : result.getMetacard();
+            if (metacard != null) {
+                add(cells, metacard.getLocation());
+            }
+        }
+
+        synchronized (this) {
+            sourceCells.put(sourceId, cells);
+        }
+    }
+
+    private void add(Map<String, Cell> cells, String wkt) {
+        double[] bounds = getBounds(wkt);
+        if (bounds == null) {
+            return;
+        }
+
+        double lon = (bounds[0] + bounds[2]) / 2;
+        double lat = (bounds[1] + bounds[3]) / 2;
+        String key = (long) Math.floor((lon + 180) / cellSize) + ":" + (long) Math
+                .floor((lat + 90) / cellSize);
+
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell(bounds);
+            cells.put(key, cell);
+        }
+        cell.add(1, lon, lat, bounds);
+    }
+
+    /**
+     * @return true if no results have been clustered yet
+     */
+    public synchronized boolean isEmpty() {
+        return sourceCells.isEmpty();
+    }
+
+    /**
+     * @return the clusters of all sources, each with its count, centroid and bounding box as
+     *         west, south, east, north
+     */
+    public synchronized JSONArray toJson() {
+        Map<String, Cell> total = new LinkedHashMap<>();
+        for (Map<String, Cell> cells : sourceCells.values()) {
+            for (Map.Entry<String, Cell> entry : cells.entrySet()) {
+                Cell cell = entry.getValue();
+                Cell totalCell = total.get(entry.getKey());
+                if (totalCell == null) {
+                    totalCell = new Cell(cell.bounds);
+                    total.put(entry.getKey(), totalCell);
+                }
+                totalCell.add(cell.count, cell.sumLon, cell.sumLat, cell.bounds);
+            }
+        }
+
+        double scale = Math.pow(10, Math.max(0, Math.ceil(-Math.log10(cellSize / 100))));
+        JSONArray clusters = new JSONArray();
+        for (Cell cell : total.values()) {
+            JSONArray centroid = new JSONArray();
+            centroid.add(round(cell.sumLon / cell.count, scale));
+            centroid.add(round(cell.sumLat / cell.count, scale));
+
+            JSONArray bbox = new JSONArray();
+            for (double bound : cell.bounds) {
+                bbox.add(round(bound, scale));
+            }
+
+            JSONObject cluster = new JSONObject();
+            cluster.put(COUNT, cell.count);
+            cluster.put(CENTROID, centroid);
+            cluster.put(BBOX, bbox);
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+
+    private static double round(double value, double scale) {
+        return Math.round(value * scale) / scale;
+    }
+
+    /**
+     * @return west, south, east and north of the coordinates in a WKT string, or null if it has
+     *         none
+     */
+    static double[] getBounds(String wkt) {
+        if (wkt == null) {
+            return null;
+        }
+
+        double[] bounds = null;
+        // positions are separated by commas and parentheses, their ordinates by spaces
+        for (String position : wkt.split("[,()]")) {
+            String[] ordinates = position.trim().split("\\s+");
+            if (ordinates.length < 2) {
+                continue;
+            }
+            double x;
+            double y;
+            try {
+                x = Double.parseDouble(ordinates[0]);
+                y = Double.parseDouble(ordinates[1]);
+            } catch (NumberFormatException e) {
+                // a geometry type such as POINT or POINT Z
+                continue;
+            }
+            if (bounds == null) {
+                bounds = new double[] {x, y, x, y};
+            } else {
+                bounds[0] = Math.min(bounds[0], x);
+                bounds[1] = Math.min(bounds[1], y);
+                bounds[2] = Math.max(bounds[2], x);
+                bounds[3] = Math.max(bounds[3], y);
+            }
+        }
+        return bounds;
+    }
+
+    private static class Cell {
+
+        private final double[] bounds;
+
+        private int count;
+
+        private double sumLon;
+
+        private double sumLat;
+
+        Cell(double[] bounds) {
+            this.bounds = bounds.clone();
+        }
+
+        void add(int locations, double lon, double lat, double[] locationBounds) {
+            count += locations;
+            sumLon += lon;
+            sumLat += lat;
+            bounds[0] = Math.min(bounds[0], locationBounds[0]);
+            bounds[1] = Math.min(bounds[1], locationBounds[1]);
+            bounds[2] = Math.max(bounds[2], locationBounds[2]);
+            bounds[3] = Math.max(bounds[3], locationBounds[3]);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Facets counts how the results of a search are distributed across the values of some attributes
+ * and, optionally, over time. Each set of results is counted in a single pass when it is added,
+ * and the counts of all sets are added up when the facets are sent, so a set added again under
+ * the same key replaces its earlier counts.
+ */
+public class Facets {
+
+    public static final String ATTRIBUTES = "attributes";
+
+    public static final String HISTOGRAM = "histogram";
+
+    public static final String ATTRIBUTE = "attribute";
+
+    public static final String INTERVAL = "interval";
+
+    public static final String BUCKETS = "buckets";
+
+    public static final String SOURCE_ID = "source-id";
+
+    public static final String METACARD_TYPE = "metacard-type";
+
+    // only the most frequent values of each attribute are sent
+    private static final int MAX_VALUES = 50;
+
+    private static final DateTimeFormatter ISO_8601_DATE_FORMAT = ISODateTimeFormat.dateTime()
+            .withZoneUTC();
+
+    private final List<String> attributes;
+
+    private final String histogramAttribute;
+
+    private final String histogramInterval;
+
+    private final Map<String, Counts> sourceCounts = new HashMap<>();
+
+    /**
+     * Create new Facets
+     *
+     * @param attributes
+     *            - names of the attributes to count the values of
+     * @param histogramAttribute
+     *            - name of the date attribute to build a histogram of, or null for none
+     * @param histogramInterval
+     *            - width of the histogram buckets: hour, day, week, month or year
+     */
+    public Facets(List<String> attributes, String histogramAttribute, String histogramInterval) {
+        this.attributes = new ArrayList<>(attributes);
+        this.histogramAttribute = histogramAttribute;
+        this.histogramInterval = histogramInterval;
+    }
+
+    /**
+     * Counts a set of results, replacing what was counted under the same key before.
+     */
+    public void add(String sourceId, List<Result> results) {
+        Counts counts = new Counts(attributes.size());
+        for (Result result : results) {
+            Metacard metacard = result == null ? null : result.getMetacard();
+            if (metacard == null) {
+                continue;
+            }
+            for (int i = 0; i < attributes.size(); i++) {
+                countValues(counts.values.get(i), metacard, attributes.get(i));
+            }
+            if (histogramAttribute != null) {
+                countDate(counts.buckets, metacard.getAttribute(histogramAttribute));
+            }
+        }
+
+        synchronized (this) {
+            sourceCounts.put(sourceId, counts);
+        }
+    }
+
+    /**
+     * @return true if no results have been counted yet
+     */
+    public synchronized boolean isEmpty() {
+        return sourceCounts.isEmpty();
+    }
+
+    /**
+     * @return the counts of all sources, the values of each attribute ordered from the most
+     *         frequent, and the histogram buckets as pairs of start date and count
+     */
+    public synchronized JSONObject toJson() {
+        JSONObject facets = new JSONObject();
+
+        JSONObject attributeFacets = new JSONObject();
+        for (int i = 0; i < attributes.size(); i++) {
+            Map<String, int[]> total = new HashMap<>();
+            for (Counts counts : sourceCounts.values()) {
+                addAll(total, counts.values.get(i));
+            }
+            attributeFacets.put(attributes.get(i), getTopValues(total));
+        }
+        facets.put(ATTRIBUTES, attributeFacets);
+
+        if (histogramAttribute != null) {
+            Map<Long, int[]> total = new TreeMap<>();
+            for (Counts counts : sourceCounts.values()) {
+                addAll(total, counts.buckets);
+            }
+            JSONArray buckets = new JSONArray();
+            for (Map.Entry<Long, int[]> bucket : total.entrySet()) {
+                JSONArray pair = new JSONArray();
+                pair.add(ISO_8601_DATE_FORMAT.print(bucket.getKey()));
+                pair.add(bucket.getValue()[0]);
+                buckets.add(pair);
+            }
+
+            JSONObject histogram = new JSONObject();
+            histogram.put(ATTRIBUTE, histogramAttribute);
+            histogram.put(INTERVAL, histogramInterval);
+            histogram.put(BUCKETS, buckets);
+            facets.put(HISTOGRAM, histogram);
+        }
+        return facets;
+    }
+
+    private void countValues(Map<String, int[]> counts, Metacard metacard, String name) {
+        if (SOURCE_ID.equals(name)) {
+            increment(counts, metacard.getSourceId());
+        } else if (METACARD_TYPE.equals(name)) {
+            increment(counts, metacard.getMetacardType() == null ?
+                    null :
+                    metacard.getMetacardType().getName());
+        } else {
+            Attribute attribute = metacard.getAttribute(name);
+            if (attribute != null && attribute.getValues() != null) {
+                for (Serializable value : attribute.getValues()) {
+                    increment(counts, value == null ? null : value.toString());
+                }
+            }
+        }
+    }
+
+    private void countDate(Map<Long, int[]> buckets, Attribute attribute) {
+        if (attribute == null || !(attribute.getValue() instanceof Date)) {
+            return;
+        }
+
+        DateTime date = new DateTime(attribute.getValue(), DateTimeZone.UTC);
+        DateTime start;
+        if ("hour".equals(histogramInterval)) {
+            start = date.hourOfDay().roundFloorCopy();
+        } else if ("week".equals(histogramInterval)) {
+            start = date.weekOfWeekyear().roundFloorCopy();
+        } else if ("month".equals(histogramInterval)) {
+            start = date.monthOfYear().roundFloorCopy();
+        } else if ("year".equals(histogramInterval)) {
+            start = date.year().roundFloorCopy();
+        } else {
+            start = date.dayOfMonth().roundFloorCopy();
+        }
+        increment(buckets, start.getMillis());
+    }
+
+    private static <K> void increment(Map<K, int[]> counts, K key) {
+        if (key == null) {
+            return;
+        }
+        int[] count = counts.get(key);
+        if (count == null) {
+            counts.put(key, new int[] {1});
+        } else {
+            count[0]++;
+        }
+    }
+
+    private static <K> void addAll(Map<K, int[]> total, Map<K, int[]> counts) {
+        for (Map.Entry<K, int[]> entry : counts.entrySet()) {
+            int[] count = total.get(entry.getKey());
+            if (count == null) {
+                total.put(entry.getKey(), new int[] {entry.getValue()[0]});
+            } else {
+                count[0] += entry.getValue()[0];
+            }
+        }
+    }
+
+    private static JSONObject getTopValues(Map<String, int[]> counts) {
+        List<Map.Entry<String, int[]>> entries = new ArrayList<>(counts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, int[]>>() {
+            @Override
+            public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b) {
+                int byCount = Integer.compare(b.getValue()[0], a.getValue()[0]);
+                return byCount != 0 ? byCount : a.getKey().compareTo(b.getKey());
+            }
+        });
+
+        // JSONObject keeps no order, so the values are sent as pairs of value and count
+        JSONObject top = new JSONObject();
+        JSONArray values = new JSONArray();
+        for (Map.Entry<String, int[]> entry : entries.subList(0,
+                Math.min(MAX_VALUES, entries.size()))) {
+            JSONArray pair = new JSONArray();
+            pair.add(entry.getKey());
+            pair.add(entry.getValue()[0]);
+            values.add(pair);
+        }
+        top.put(BUCKETS, values);
+        if (entries.size() > MAX_VALUES) {
+            int other = 0;
+            for (Map.Entry<String, int[]> entry : entries.subList(MAX_VALUES, entries.size())) {
+                other += entry.getValue()[0];
+            }
+            top.put("other", other);
+        }
+        return top;
+    }
+
+    private static class Counts {
+
+        private final List<Map<String, int[]>> values;
+
+        private final Map<Long, int[]> buckets = new HashMap<>();
+
+        Counts(int attributeCount) {
+            values = new ArrayList<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                values.add(new HashMap<String, int[]>());
+            }
+        }
+    }
+}
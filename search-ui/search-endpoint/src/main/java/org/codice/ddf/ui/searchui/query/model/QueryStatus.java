@@ -34,6 +34,9 @@ public class QueryStatus {
     /* elapsed query time in milliseconds */
     private long elapsedMilliseconds = 0;
 
+    /* number of results of this source collapsed into a copy from another source */
+    private long duplicates = 0;
+
     public QueryStatus(String source) {
         sourceId = source;
     }
@@ -46,6 +49,14 @@ public QueryStatus(String source, Set<ProcessingDetails> processingDetails, int
         this.state = state;
     }
 
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public void setDuplicates(long duplicates) {
+        this.duplicates = duplicates;
+    }
+
     public long getElapsed() {
         return elapsedMilliseconds;
     }
@@ -14,6 +14,7 @@
  **/
 package org.codice.ddf.ui.searchui.query.model;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +26,10 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.MetacardType;
 import ddf.catalog.data.Result;
 import ddf.catalog.operation.ProcessingDetails;
 import ddf.catalog.operation.QueryResponse;
@@ -56,6 +61,8 @@ public class Search {
 
     public static final String METACARD_TYPES = "metacard-types";
 
+    public static final String METACARD_TYPE_VERSIONS = "metacard-type-versions";
+
     public static final String SUCCESSFUL = "successful";
 
     public static final String STATUS = "status";
@@ -70,8 +77,43 @@ public class Search {
 
     public static final String CACHED = "cached";
 
+    public static final String DUPLICATES = "duplicates";
+
+    public static final String STREAM = "stream";
+
+    public static final String CHUNK = "chunk";
+
+    public static final String CHUNKS = "chunks";
+
+    public static final String OFFSET = "offset";
+
+    public static final String GEOMETRY = "geometry";
+
+    public static final String SIMPLIFIED = "simplified";
+
+    public static final String PROPERTIES = "properties";
+
+    public static final String PROJECTED = "projected";
+
+    public static final String CLUSTERS = "clusters";
+
+    public static final String FACETS = "facets";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(Search.class);
 
+    // rough memory estimates used to bound the number of searches kept in memory
+    private static final long BASE_SIZE = 1024;
+
+    private static final long STATUS_SIZE = 512;
+
+    private static final long RESULT_SIZE = 256;
+
+    private static final long ATTRIBUTE_SIZE = 64;
+
+    private static final long VALUE_SIZE = 24;
+
+    private static final long STRING_SIZE = 40;
+
     private SearchRequest searchRequest;
 
     private QueryResponse compositeQueryResponse;
@@ -82,6 +124,12 @@ public class Search {
 
     private long responseNum = 0;
 
+    private long resultsSize = 0;
+
+    private Facets facets;
+
+    private ClusterAggregator clusters;
+
     /**
      * Adds a query response to the cached set of results.
      *
@@ -93,6 +141,7 @@ public synchronized void addQueryResponse(QueryResponse queryResponse) throws
             InterruptedException {
         if (queryResponse != null) {
             compositeQueryResponse = queryResponse;
+            resultsSize = estimateSize(queryResponse.getResults());
             updateResultStatus(queryResponse.getResults());
         }
     }
@@ -139,6 +188,82 @@ private void updateResultStatus(List<Result> results) {
         }
     }
 
+    /**
+     * Returns an estimate of the memory used by this search. The size of the results is measured
+     * from their attribute values when they are added, so this is cheap enough to call from a
+     * cache weigher.
+     *
+     * @return an estimate, in bytes, of the memory used by this search and its results
+     */
+    public synchronized long estimateSize() {
+        return BASE_SIZE + STATUS_SIZE * queryStatus.size() + resultsSize;
+    }
+
+    private static long estimateSize(List<Result> results) {
+        long size = 0;
+        if (results != null) {
+            for (Result result : results) {
+                size += RESULT_SIZE;
+                if (result != null && result.getMetacard() != null) {
+                    size += estimateSize(result.getMetacard());
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(Metacard metacard) {
+        MetacardType type = metacard.getMetacardType();
+        if (type == null || type.getAttributeDescriptors() == null) {
+            return 0;
+        }
+
+        long size = 0;
+        for (AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
+            Attribute attribute = metacard.getAttribute(descriptor.getName());
+            if (attribute != null && attribute.getValues() != null) {
+                size += ATTRIBUTE_SIZE;
+                for (Serializable value : attribute.getValues()) {
+                    size += estimateSize(value);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(Serializable value) {
+        if (value instanceof String) {
+            return STRING_SIZE + 2L * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return VALUE_SIZE + ((byte[]) value).length;
+        }
+        return VALUE_SIZE;
+    }
+
+    /**
+     * Updates the number of results each source returned that were collapsed into a copy of the
+     * same product from another source.
+     *
+     * @param duplicateCounts - number of collapsed results per source id
+     */
+    public synchronized void setDuplicateCounts(Map<String, Long> duplicateCounts) {
+        for (Map.Entry<String, Long> entry : duplicateCounts.entrySet()) {
+            QueryStatus status = queryStatus.get(entry.getKey());
+            if (status != null) {
+                status.setDuplicates(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param sourceId - ID of a source
+     * @return true if the query on the source failed
+     */
+    public synchronized boolean isFailed(String sourceId) {
+        QueryStatus status = queryStatus.get(sourceId);
+        return status != null && status.getState() == State.FAILED;
+    }
+
     public boolean isFinished() {
         return responseNum >= searchRequest.getSourceIds().size();
     }
@@ -153,6 +278,28 @@ public void setSearchRequest(SearchRequest request) {
         for (String sourceId : searchRequest.getSourceIds()) {
             queryStatus.put(sourceId, new QueryStatus(sourceId));
         }
+        if (searchRequest.isFaceted()) {
+            facets = new Facets(searchRequest.getFacetAttributes(),
+                    searchRequest.getHistogramAttribute(), searchRequest.getHistogramInterval());
+        }
+        if (searchRequest.getClusterCellSize() > 0) {
+            clusters = new ClusterAggregator(searchRequest.getClusterCellSize());
+        }
+    }
+
+    /**
+     * @return the facets counted for the search, or null if the request did not ask for any
+     */
+    public Facets getFacets() {
+        return facets;
+    }
+
+    /**
+     * @return the clusters of the locations of the results, or null if the request did not ask
+     *         for them
+     */
+    public ClusterAggregator getClusters() {
+        return clusters;
     }
 
     public QueryResponse getCompositeQueryResponse() {
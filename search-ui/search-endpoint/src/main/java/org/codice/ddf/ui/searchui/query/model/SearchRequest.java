@@ -14,7 +14,11 @@
  **/
 package org.codice.ddf.ui.searchui.query.model;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.lang.Validate;
@@ -32,6 +36,34 @@ public class SearchRequest {
 
     private final Query query;
 
+    private boolean deltaUpdates = false;
+
+    private boolean metacardTypeReferences = false;
+
+    private boolean streamResults = false;
+
+    private boolean dictionaryEncoding = false;
+
+    private double geometryTolerance = 0;
+
+    private double clusterCellSize = 0;
+
+    private List<String> facetAttributes = Collections.emptyList();
+
+    private String histogramAttribute;
+
+    private String histogramInterval;
+
+    private Set<String> fields = Collections.emptySet();
+
+    private volatile boolean cancelled = false;
+
+    private String windowKey;
+
+    private int resultOffset = 0;
+
+    private int resultLimit = -1;
+
     /**
      * Creates a SearchRequest
      *
@@ -62,6 +94,184 @@ public Set<String> getSourceIds() {
         return sourceIds;
     }
 
+    /**
+     * @return true if the client wants only the changes since the previous message pushed on
+     * the search channel instead of a full snapshot every time
+     */
+    public boolean isDeltaUpdates() {
+        return deltaUpdates;
+    }
+
+    public void setDeltaUpdates(boolean deltaUpdates) {
+        this.deltaUpdates = deltaUpdates;
+    }
+
+    /**
+     * @return true if the client wants only the name and version of each metacard type and
+     * fetches the schemas it does not have yet separately
+     */
+    public boolean isMetacardTypeReferences() {
+        return metacardTypeReferences;
+    }
+
+    public void setMetacardTypeReferences(boolean metacardTypeReferences) {
+        this.metacardTypeReferences = metacardTypeReferences;
+    }
+
+    /**
+     * @return true if the client wants each update split into several messages holding a bounded
+     * number of results, instead of one message holding all of them
+     */
+    public boolean isStreamResults() {
+        return streamResults;
+    }
+
+    public void setStreamResults(boolean streamResults) {
+        this.streamResults = streamResults;
+    }
+
+    /**
+     * @return true if the client wants the strings repeated within a message replaced by
+     * references into a string table sent with the message
+     */
+    public boolean isDictionaryEncoding() {
+        return dictionaryEncoding;
+    }
+
+    public void setDictionaryEncoding(boolean dictionaryEncoding) {
+        this.dictionaryEncoding = dictionaryEncoding;
+    }
+
+    /**
+     * @return tolerance, in degrees, to which result geometries are simplified for display, or 0 if
+     * they are sent at full resolution
+     */
+    public double getGeometryTolerance() {
+        return geometryTolerance;
+    }
+
+    public void setGeometryTolerance(double geometryTolerance) {
+        this.geometryTolerance = geometryTolerance;
+    }
+
+    /**
+     * @return size, in degrees, of the grid cells the locations of all the results are clustered
+     * into, or 0 if no clusters are sent
+     */
+    public double getClusterCellSize() {
+        return clusterCellSize;
+    }
+
+    public void setClusterCellSize(double clusterCellSize) {
+        this.clusterCellSize = clusterCellSize;
+    }
+
+    /**
+     * @return true if the results of the search are counted into {@link Facets}
+     */
+    public boolean isFaceted() {
+        return !facetAttributes.isEmpty() || histogramAttribute != null;
+    }
+
+    public List<String> getFacetAttributes() {
+        return facetAttributes;
+    }
+
+    public String getHistogramAttribute() {
+        return histogramAttribute;
+    }
+
+    public String getHistogramInterval() {
+        return histogramInterval;
+    }
+
+    /**
+     * @param facetAttributes
+     *            - names of the attributes to count the values of
+     * @param histogramAttribute
+     *            - name of the date attribute to build a histogram of, or null for none
+     * @param histogramInterval
+     *            - width of the histogram buckets: hour, day, week, month or year
+     */
+    public void setFacets(List<String> facetAttributes, String histogramAttribute,
+            String histogramInterval) {
+        this.facetAttributes = facetAttributes == null ?
+                Collections.<String>emptyList() :
+                Collections.unmodifiableList(new ArrayList<>(facetAttributes));
+        this.histogramAttribute = histogramAttribute;
+        this.histogramInterval = histogramInterval;
+    }
+
+    /**
+     * @return names of the only attributes sent with each result, besides its id, source and
+     * type, or an empty set if all of them are sent
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(Collection<String> fields) {
+        this.fields = fields == null ?
+                Collections.<String>emptySet() :
+                Collections.unmodifiableSet(new LinkedHashSet<>(fields));
+    }
+
+    /**
+     * @return key under which the results of the search are kept for paging once it finishes, or
+     * null if they are not kept
+     */
+    public String getWindowKey() {
+        return windowKey;
+    }
+
+    /**
+     * @return index of the first of the merged results sent to the client, for searches that
+     * fetch more results than the client asked for
+     */
+    public int getResultOffset() {
+        return resultOffset;
+    }
+
+    /**
+     * @return maximum number of the merged results sent to the client, or -1 to send all of them
+     */
+    public int getResultLimit() {
+        return resultLimit;
+    }
+
+    /**
+     * Makes the search fetch a window of several pages while only the requested page is sent to
+     * the client. The rest of the window is kept for the other pages once the search finishes.
+     *
+     * @param windowKey
+     *            - key under which the window is kept
+     * @param resultOffset
+     *            - index of the requested page within the window
+     * @param resultLimit
+     *            - size of the requested page
+     */
+    public void setResultWindow(String windowKey, int resultOffset, int resultLimit) {
+        this.windowKey = windowKey;
+        this.resultOffset = resultOffset;
+        this.resultLimit = resultLimit;
+    }
+
+    /**
+     * @return true if the search was cancelled, for example because the client disconnected or
+     * started a new query with the same id
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Marks the search as cancelled. Source queries that have not finished yet skip their
+     * remaining work.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
     public String toString() {
         return getId();
     }
@@ -14,14 +14,19 @@
  **/
 package org.codice.ddf.ui.searchui.query.service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
 
 import org.apache.commons.lang.StringUtils;
+import org.codice.ddf.ui.searchui.query.controller.DictionaryEncoder;
 import org.codice.ddf.ui.searchui.query.controller.SearchController;
 import org.codice.ddf.ui.searchui.query.model.Search;
 import org.codice.ddf.ui.searchui.query.model.SearchRequest;
@@ -36,7 +41,6 @@
 import org.cometd.bayeux.server.ServerSession;
 import org.cometd.server.ServerMessageImpl;
 import org.geotools.filter.text.cql2.CQLException;
-import org.geotools.filter.text.ecql.ECQL;
 import org.opengis.filter.Filter;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
@@ -49,13 +53,10 @@
 import ddf.catalog.filter.FilterDelegate;
 import ddf.catalog.filter.impl.SortByImpl;
 import ddf.catalog.operation.Query;
-import ddf.catalog.operation.SourceInfoResponse;
 import ddf.catalog.operation.impl.QueryImpl;
-import ddf.catalog.operation.impl.SourceInfoRequestEnterprise;
-import ddf.catalog.source.SourceDescriptor;
-import ddf.catalog.source.SourceUnavailableException;
 import ddf.security.SecurityConstants;
 import ddf.security.Subject;
+import net.minidev.json.JSONObject;
 
 /**
  * This class performs the searches when a client communicates with the cometd endpoint
@@ -81,6 +82,30 @@ public class SearchService {
 
     private static final String SORT = "sort";
 
+    private static final String DELTA = "delta";
+
+    private static final String TYPE_REFS = "typeRefs";
+
+    private static final String STREAM = "stream";
+
+    private static final String ENCODING = "encoding";
+
+    private static final String NAMES = "names";
+
+    private static final String TOLERANCE = "tolerance";
+
+    private static final String CLUSTER = "cluster";
+
+    private static final String FACETS = "facets";
+
+    private static final String HISTOGRAM = "histogram";
+
+    private static final String FIELDS = "fields";
+
+    private static final String METACARD_TYPES_CHANNEL = "/service/metacardtypes";
+
+    private static final String METACARD_CHANNEL = "/service/query/metacard";
+
     private static final String DEFAULT_SORT_ORDER = "desc";
 
     private static final long DEFAULT_TIMEOUT = 300000;
@@ -135,14 +160,8 @@ public void configureChannel(ConfigurableServerChannel channel) {
                         }
                     });
 
-            BayeuxContext context = bayeux.getContext();
-            Subject subject = null;
-            if (context != null) {
-                subject = (Subject) context.getRequestAttribute(SecurityConstants.SECURITY_SUBJECT);
-            }
-
             // kick off the query
-            executeQuery(queryMessage, subject);
+            executeQuery(queryMessage, getSubject(), remote);
 
             reply.put(Search.SUCCESSFUL, true);
             remote.deliver(serverSession, reply);
@@ -154,6 +173,161 @@ public void configureChannel(ConfigurableServerChannel channel) {
 
     }
 
+    /**
+     * Service method called by Cometd when a client asks for the full state of a search it
+     * receives delta updates for, typically after noticing a gap in the sequence numbers.
+     *
+     * @param remote
+     *            - Client session
+     * @param message
+     *            - JSON message containing the id of the search
+     */
+    @Listener("/service/query/snapshot")
+    public void processSnapshot(final ServerSession remote, Message message) {
+        Map<String, Object> snapshotMessage = message.getDataAsMap();
+
+        if (snapshotMessage != null && snapshotMessage.get(Search.ID) != null) {
+            searchController.pushSnapshot(snapshotMessage.get(Search.ID).toString(), remote,
+                    serverSession);
+        }
+    }
+
+    /**
+     * Listens to the /meta/subscribe {@link org.cometd.bayeux.Channel} so that a client
+     * re-subscribing to a search channel, for example after reconnecting, is sent the current
+     * state of the search before any further delta updates.
+     *
+     * @param remote
+     *            - Client session
+     * @param message
+     *            - the subscribe message
+     */
+    @Listener("/meta/subscribe")
+    public void processSubscribe(final ServerSession remote, Message message) {
+        Object subscription = message.get(Message.SUBSCRIPTION_FIELD);
+
+        if (remote != null && subscription instanceof String) {
+            String channel = (String) subscription;
+            if (channel.startsWith("/") && !channel.startsWith("/service/")
+                    && !channel.startsWith("/meta/")) {
+                searchController.pushSnapshot(channel.substring(1), remote, serverSession);
+            }
+        }
+    }
+
+    /**
+     * Service method called by Cometd when a client is no longer interested in a search, for
+     * example because the user canceled it or navigated away.
+     *
+     * @param remote
+     *            - Client session
+     * @param message
+     *            - JSON message containing the id of the search
+     */
+    @Listener("/service/query/cancel")
+    public void processCancel(final ServerSession remote, Message message) {
+        Map<String, Object> cancelMessage = message.getDataAsMap();
+
+        if (cancelMessage != null && cancelMessage.get(Search.ID) != null) {
+            searchController.cancelSearch(cancelMessage.get(Search.ID).toString(),
+                    remote == null ? null : remote.getId());
+        }
+    }
+
+    /**
+     * Listens to the /meta/disconnect {@link org.cometd.bayeux.Channel} so the searches of a
+     * client that disconnects stop running.
+     *
+     * @param remote
+     *            - Client session that is disconnecting
+     * @param message
+     *            - the disconnect message
+     */
+    @Listener("/meta/disconnect")
+    public void processDisconnect(final ServerSession remote, Message message) {
+        if (remote != null) {
+            searchController.cancelSearches(remote.getId());
+        }
+    }
+
+    /**
+     * Service method called by Cometd when a client that receives metacard types by reference asks
+     * for the schemas of types it has not cached yet.
+     *
+     * @param remote
+     *            - Client session
+     * @param message
+     *            - JSON message containing the names of the metacard types
+     */
+    @Listener(METACARD_TYPES_CHANNEL)
+    public void processMetacardTypes(final ServerSession remote, Message message) {
+        Map<String, Object> typesMessage = message.getDataAsMap();
+        Set<String> names = new HashSet<String>();
+
+        if (typesMessage != null && typesMessage.get(NAMES) instanceof Object[]) {
+            for (Object name : (Object[]) typesMessage.get(NAMES)) {
+                names.add(String.valueOf(name));
+            }
+        } else if (typesMessage != null && typesMessage.get(NAMES) instanceof Collection) {
+            for (Object name : (Collection<?>) typesMessage.get(NAMES)) {
+                names.add(String.valueOf(name));
+            }
+        }
+
+        Map<String, Object> reply = searchController.getMetacardTypeSchemas(names);
+        reply.put(Search.SUCCESSFUL, true);
+        remote.deliver(serverSession, METACARD_TYPES_CHANNEL, reply, null);
+    }
+
+    /**
+     * Service method called by Cometd when a client asks for the full metacard of a result, for
+     * example because it was sent with a geometry simplified for the map.
+     *
+     * @param remote
+     *            - Client session
+     * @param message
+     *            - JSON message containing the id and the source of the metacard
+     */
+    @Listener(METACARD_CHANNEL)
+    public void processMetacard(final ServerSession remote, Message message) {
+        Map<String, Object> metacardMessage = message.getDataAsMap();
+        String id = metacardMessage == null ? null :
+                castObject(String.class, metacardMessage.get(ID));
+        final Map<String, Object> reply = new HashMap<String, Object>();
+        reply.put(Search.ID, id);
+
+        if (id == null) {
+            reply.put(Search.SUCCESSFUL, false);
+            remote.deliver(serverSession, METACARD_CHANNEL, reply, null);
+            return;
+        }
+
+        // the metacard is fetched on a query thread and delivered when it arrives
+        String source = castObject(String.class, metacardMessage.get(SOURCES));
+        Filter filter = filterBuilder.attribute(Metacard.ID).is().equalTo().text(id);
+        Query query = new QueryImpl(filter, DEFAULT_START_INDEX, 1, SortBy.NATURAL_ORDER,
+                false, DEFAULT_TIMEOUT);
+        searchController.fetchMetacard(StringUtils.isEmpty(source) ? null : source, query,
+                remote, getSubject(), new SearchController.MetacardCallback() {
+                    @Override
+                    public void onMetacard(JSONObject metacard) {
+                        if (metacard != null) {
+                            reply.put(Search.METACARD, metacard);
+                        }
+                        reply.put(Search.SUCCESSFUL, metacard != null);
+                        remote.deliver(serverSession, METACARD_CHANNEL, reply, null);
+                    }
+                });
+    }
+
+    private Subject getSubject() {
+        BayeuxContext context = bayeux.getContext();
+        if (context != null) {
+            return (Subject) context.getRequestAttribute(SecurityConstants.SECURITY_SUBJECT);
+        }
+        return null;
+    }
+
     @SuppressWarnings("unchecked")
     private <T> T castObject(Class<T> targetClass, Object o) {
         if (o != null) {
@@ -181,6 +355,20 @@ private <T> T castObject(Class<T> targetClass, Object o) {
      *            - JSON message received from cometd
      */
     public void executeQuery(Map<String, Object> queryMessage, Subject subject) {
+        executeQuery(queryMessage, subject, null);
+    }
+
+    /**
+     * Creates the query requests for each source and hands off the query to the Search Controller
+     *
+     * @param queryMessage
+     *            - JSON message received from cometd
+     * @param remote
+     *            - Client session that sent the query, its searches are cancelled when it goes
+     *            away
+     */
+    public void executeQuery(Map<String, Object> queryMessage, Subject subject,
+            ServerSession remote) {
         String sources = castObject(String.class, queryMessage.get(SOURCES));
         Long maxTimeout = castObject(Long.class, queryMessage.get(MAX_TIMEOUT));
         Long startIndex = castObject(Long.class, queryMessage.get(START_INDEX));
@@ -188,29 +376,89 @@ public void executeQuery(Map<String, Object> queryMessage, Subject subject) {
         String cql = castObject(String.class, queryMessage.get(CQL_FILTER));
         String sort = castObject(String.class, queryMessage.get(SORT));
         String id = castObject(String.class, queryMessage.get(ID));
+        boolean delta = Boolean.parseBoolean(castObject(String.class, queryMessage.get(DELTA)));
+        boolean typeRefs = Boolean.parseBoolean(castObject(String.class,
+                queryMessage.get(TYPE_REFS)));
+        boolean stream = Boolean.parseBoolean(castObject(String.class,
+                queryMessage.get(STREAM)));
+        String encoding = castObject(String.class, queryMessage.get(ENCODING));
+        Double tolerance = castObject(Double.class, queryMessage.get(TOLERANCE));
+        Double cluster = castObject(Double.class, queryMessage.get(CLUSTER));
+        String facets = castObject(String.class, queryMessage.get(FACETS));
+        String histogram = castObject(String.class, queryMessage.get(HISTOGRAM));
+        String fields = castObject(String.class, queryMessage.get(FIELDS));
 
         Set<String> sourceIds = getSourceIds(sources);
 
         Filter filter = null;
         try {
-            filter = ECQL.toFilter(cql);
+            filter = searchController.getFilterCache().get(cql);
         } catch (CQLException e) {
             LOGGER.warn("Unable to parse CQL filter", e);
             return;
         }
+        LOGGER.debug("Filter cache size: {}, {}", searchController.getFilterCache().size(),
+                searchController.getFilterCache().getStats());
 
         Query query = createQuery(filter, startIndex, count, sort, maxTimeout);
         SearchRequest searchRequest = new SearchRequest(sourceIds, query, id);
+        // streamed updates are always complete, so they are never delta encoded
+        searchRequest.setDeltaUpdates(delta && !stream);
+        searchRequest.setMetacardTypeReferences(typeRefs);
+        searchRequest.setStreamResults(stream);
+        searchRequest.setDictionaryEncoding(DictionaryEncoder.DICTIONARY.equals(encoding));
+        if (tolerance != null && tolerance > 0) {
+            searchRequest.setGeometryTolerance(tolerance);
+        }
+        if (cluster != null && cluster > 0) {
+            searchRequest.setClusterCellSize(cluster);
+        }
+        setFacets(searchRequest, facets, histogram);
+        searchRequest.setFields(getNames(fields));
 
         try {
             // Hand off to the search controller for the actual query
-            searchController.executeQuery(searchRequest, serverSession, subject);
+            searchController.executeQuery(searchRequest, serverSession, remote, subject);
         } catch (RuntimeException re) {
             LOGGER.warn("Exception while executing a query", re);
         }
 
     }
 
+    /**
+     * @param facets
+     *            - comma separated names of the attributes to count the values of
+     * @param histogram
+     *            - date attribute to build a histogram of and bucket width, separated by a colon,
+     *            such as modified:month
+     */
+    private void setFacets(SearchRequest searchRequest, String facets, String histogram) {
+        String histogramAttribute = null;
+        String histogramInterval = null;
+        if (StringUtils.isNotBlank(histogram)) {
+            String[] histogramAry = histogram.split(":");
+            histogramAttribute = histogramAry[0].trim();
+            histogramInterval = histogramAry.length > 1 ? histogramAry[1].trim() : "day";
+        }
+
+        searchRequest.setFacets(getNames(facets), histogramAttribute, histogramInterval);
+    }
+
+    /**
+     * @return the names in a comma separated list, or an empty list if it is blank
+     */
+    private List<String> getNames(String names) {
+        List<String> list = new ArrayList<String>();
+        if (StringUtils.isNotBlank(names)) {
+            for (String name : StringUtils.stripAll(names.split(","))) {
+                if (StringUtils.isNotEmpty(name)) {
+                    list.add(name);
+                }
+            }
+        }
+        return list;
+    }
+
     private Set<String> getSourceIds(String sources) {
         Set<String> sourceIds;
         if (StringUtils.equalsIgnoreCase(sources, LOCAL_SOURCE)) {
@@ -222,25 +470,8 @@ private Set<String> getSourceIds(String sources) {
                     Arrays.asList(StringUtils.stripAll(sources.split(","))));
         } else {
             LOGGER.debug("Received enterprise query");
-            SourceInfoResponse sourceInfo = null;
-            try {
-                sourceInfo = searchController.getFramework()
-                        .getSourceInfo(new SourceInfoRequestEnterprise(true));
-            } catch (SourceUnavailableException e) {
-                LOGGER.debug("Exception while getting source status. Defaulting to all sources. "
-                                + "This could include unavailable sources.", e);
-            }
-
-            if (sourceInfo != null) {
-                sourceIds = new HashSet<String>();
-                for (SourceDescriptor source : sourceInfo.getSourceInfo()) {
-                    if (source.isAvailable()) {
-                        sourceIds.add(source.getSourceId());
-                    }
-                }
-            } else {
-                sourceIds = searchController.getFramework().getSourceIds();
-            }
+            // the status of the sources is collected in the background, see SourceAvailability
+            sourceIds = searchController.getSourceAvailability().getSourceIds();
         }
         return sourceIds;
     }
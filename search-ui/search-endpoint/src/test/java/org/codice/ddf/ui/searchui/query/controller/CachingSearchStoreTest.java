@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.codice.ddf.ui.searchui.query.model.Search;
+import org.codice.ddf.ui.searchui.query.model.SearchRequest;
+import org.junit.Test;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.impl.QueryResponseImpl;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.CachingSearchStore}
+ */
+public class CachingSearchStoreTest {
+
+    @Test
+    public void testGetOrCreateReturnsSameSearch() {
+        CachingSearchStore store = new CachingSearchStore(10, 1024 * 1024, 0);
+
+        Search first = store.getOrCreate(request("1"));
+        Search second = store.getOrCreate(request("1"));
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(store.get("1"), is(sameInstance(first)));
+        assertThat(store.size(), is(1L));
+    }
+
+    @Test
+    public void testRemoveDoesNotNotifyListener() {
+        CachingSearchStore store = new CachingSearchStore(10, 1024 * 1024, 0);
+        final List<String> evicted = new ArrayList<String>();
+        store.setEvictionListener(new SearchStore.EvictionListener() {
+            @Override
+            public void searchEvicted(String id, Search search) {
+                evicted.add(id);
+            }
+        });
+
+        store.getOrCreate(request("1"));
+        store.remove("1");
+
+        assertThat(store.get("1"), is(nullValue()));
+        assertThat(evicted.isEmpty(), is(true));
+        assertThat(store.getEvictionCount(), is(0L));
+    }
+
+    @Test
+    public void testEntryLimitEvictsAndNotifies() {
+        CachingSearchStore store = new CachingSearchStore(2, 1024 * 1024, 0);
+        final List<String> evicted = new ArrayList<String>();
+        store.setEvictionListener(new SearchStore.EvictionListener() {
+            @Override
+            public void searchEvicted(String id, Search search) {
+                evicted.add(id);
+            }
+        });
+
+        for (int i = 0; i < 10; i++) {
+            store.getOrCreate(request(String.valueOf(i)));
+        }
+
+        assertThat(store.size() <= 2, is(true));
+        assertThat(evicted.size() >= 8, is(true));
+        assertThat(store.getEvictionCount(), is((long) evicted.size()));
+    }
+
+    @Test
+    public void testUpdateDoesNotRestoreRemovedSearch() {
+        CachingSearchStore store = new CachingSearchStore(10, 1024 * 1024, 0);
+        Search search = store.getOrCreate(request("1"));
+        store.remove("1");
+
+        store.update(search);
+
+        assertThat(store.get("1"), is(nullValue()));
+    }
+
+    @Test
+    public void testConfigureKeepsSearches() {
+        CachingSearchStore store = new CachingSearchStore(10, 1024 * 1024, 0);
+        Search search = store.getOrCreate(request("1"));
+
+        store.configure(20, 1024 * 1024, 60000);
+
+        assertThat(store.get("1"), is(sameInstance(search)));
+    }
+
+    @Test
+    public void testSearchIsWeighedByItsResults() throws InterruptedException {
+        CachingSearchStore store = new CachingSearchStore(10, 100 * 1024, 0);
+        final List<String> evicted = new ArrayList<String>();
+        store.setEvictionListener(new SearchStore.EvictionListener() {
+            @Override
+            public void searchEvicted(String id, Search search) {
+                evicted.add(id);
+            }
+        });
+        Search small = store.getOrCreate(request("1"));
+        Search large = store.getOrCreate(request("2"));
+
+        small.addQueryResponse(response(StringUtils.repeat("x", 1024)));
+        store.update(small);
+        large.addQueryResponse(response(StringUtils.repeat("x", 100 * 1024)));
+        store.update(large);
+
+        assertThat(store.get("2"), is(nullValue()));
+        assertThat(evicted.contains("2"), is(true));
+        assertThat(small.estimateSize() < large.estimateSize() / 10, is(true));
+    }
+
+    @Test
+    public void testCancelledRequestIsNotStoredAgain() {
+        CachingSearchStore store = new CachingSearchStore(10, 1024 * 1024, 0);
+        SearchRequest request = request("1");
+        store.getOrCreate(request);
+        store.remove("1");
+        request.cancel();
+
+        Search search = store.getOrCreate(request);
+
+        assertThat(search.getSearchRequest(), is(sameInstance(request)));
+        assertThat(store.get("1"), is(nullValue()));
+    }
+
+    private QueryResponseImpl response(String metadata) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId("id");
+        metacard.setMetadata(metadata);
+        return new QueryResponseImpl(mock(QueryRequest.class),
+                Collections.<Result>singletonList(new ResultImpl(metacard)), 1);
+    }
+
+    private SearchRequest request(String id) {
+        return new SearchRequest(Collections.singleton("src"), null, id);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.cometd.bayeux.server.BayeuxServer;
+import org.cometd.bayeux.server.ServerChannel;
+import org.cometd.bayeux.server.ServerSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.ChannelPublisher}
+ */
+public class ChannelPublisherTest {
+
+    private ChannelPublisher publisher;
+
+    private ServerChannel channel;
+
+    private ServerSession session;
+
+    @Before
+    public void setUp() {
+        BayeuxServer bayeuxServer = mock(BayeuxServer.class);
+        channel = mock(ServerChannel.class);
+        session = mock(ServerSession.class);
+        when(bayeuxServer.getChannel(anyString())).thenReturn(channel);
+
+        publisher = new ChannelPublisher();
+        publisher.setBayeuxServer(bayeuxServer);
+    }
+
+    @Test
+    public void testQueuedSnapshotIsSuperseded() {
+        publisher.enqueue("/search", message(1), true, session);
+        publisher.enqueue("/search", message(2), true, session);
+        publisher.drain("/search");
+
+        List<Object> published = captureMessages(1);
+        assertThat(((Map<?, ?>) published.get(0)).get("n"), is((Object) 2));
+        assertThat(publisher.getSupersededCount(), is(1L));
+    }
+
+    @Test
+    public void testDeltasAreNeverDropped() {
+        publisher.enqueue("/search", message(1), false, session);
+        publisher.enqueue("/search", message(2), false, session);
+        publisher.enqueue("/search", message(3), true, session);
+        publisher.drain("/search");
+
+        List<Object> published = captureMessages(3);
+        for (int i = 0; i < 3; i++) {
+            assertThat(((Map<?, ?>) published.get(i)).get("n"), is((Object) (i + 1)));
+        }
+        assertThat(publisher.getSupersededCount(), is(0L));
+    }
+
+    @Test
+    public void testRemoveDrainedChannel() {
+        publisher.publish("/search", message(1), true, session);
+
+        publisher.remove("/search");
+
+        assertThat(publisher.getQueueCount(), is(0));
+    }
+
+    @Test
+    public void testChannelWithQueuedMessagesIsRemovedOnceDrained() {
+        publisher.enqueue("/search", message(1), true, session);
+
+        publisher.remove("/search");
+        assertThat(publisher.getQueueCount(), is(1));
+
+        publisher.drain("/search");
+
+        captureMessages(1);
+        assertThat(publisher.getQueueCount(), is(0));
+    }
+
+    @Test
+    public void testMessageAfterRemoveIsPublished() {
+        publisher.publish("/search", message(1), true, session);
+        publisher.remove("/search");
+
+        publisher.publish("/search", message(2), true, session);
+
+        List<Object> published = captureMessages(2);
+        assertThat(((Map<?, ?>) published.get(1)).get("n"), is((Object) 2));
+        assertThat(publisher.getQueueCount(), is(1));
+    }
+
+    private List<Object> captureMessages(int count) {
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(channel, times(count)).publish(any(ServerSession.class), captor.capture(),
+                anyString());
+        return captor.getAllValues();
+    }
+
+    private Map<String, Object> message(int n) {
+        return Collections.<String, Object>singletonMap("n", n);
+    }
+}
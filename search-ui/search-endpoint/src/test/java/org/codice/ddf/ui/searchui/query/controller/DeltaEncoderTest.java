@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.codice.ddf.ui.searchui.query.model.Search;
+import org.junit.Test;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.DeltaEncoder}
+ */
+public class DeltaEncoderTest {
+
+    @Test
+    public void testFirstMessageIsFullSnapshot() {
+        DeltaEncoder encoder = new DeltaEncoder();
+
+        JSONObject message = encoder.encode(snapshot(status("src1", "ACTIVE"), "a", "b"));
+
+        assertThat((Boolean) message.get(DeltaEncoder.DELTA), is(false));
+        assertThat((Long) message.get(DeltaEncoder.SEQUENCE), is(1L));
+        assertThat(((List<?>) message.get(Search.RESULTS)).size(), is(2));
+        assertThat(message.get(DeltaEncoder.KEYS),
+                is((Object) Arrays.asList("src/a", "src/b")));
+    }
+
+    @Test
+    public void testDeltaContainsOnlyChanges() {
+        DeltaEncoder encoder = new DeltaEncoder();
+        encoder.encode(snapshot(status("src1", "ACTIVE"), "a", "b"));
+
+        JSONObject message = encoder.encode(snapshot(status("src1", "SUCCEEDED"), "c", "a"));
+
+        assertThat((Boolean) message.get(DeltaEncoder.DELTA), is(true));
+        assertThat((Long) message.get(DeltaEncoder.SEQUENCE), is(2L));
+        Map<?, ?> added = (Map<?, ?>) message.get(DeltaEncoder.ADDED);
+        assertThat(added.size(), is(1));
+        assertThat(added.containsKey("src/c"), is(true));
+        assertThat(message.get(DeltaEncoder.REMOVED),
+                is((Object) Arrays.asList("src/b")));
+        assertThat(message.get(DeltaEncoder.ORDER),
+                is((Object) Arrays.asList("src/c", "src/a")));
+        assertThat(((List<?>) message.get(Search.STATUS)).size(), is(1));
+        assertThat(message.get(Search.RESULTS), is(nullValue()));
+        assertThat(message.get(Search.METACARD_TYPES), is(nullValue()));
+    }
+
+    @Test
+    public void testUnchangedPushIsEmptyDelta() {
+        DeltaEncoder encoder = new DeltaEncoder();
+        encoder.encode(snapshot(status("src1", "ACTIVE"), "a"));
+
+        JSONObject message = encoder.encode(snapshot(status("src1", "ACTIVE"), "a"));
+
+        assertThat(message.get(DeltaEncoder.ADDED), is(nullValue()));
+        assertThat(message.get(DeltaEncoder.REMOVED), is(nullValue()));
+        assertThat(message.get(DeltaEncoder.ORDER), is(nullValue()));
+        assertThat(message.get(Search.STATUS), is(nullValue()));
+    }
+
+    @Test
+    public void testChangedActionsAreSent() {
+        DeltaEncoder encoder = new DeltaEncoder();
+        encoder.encode(snapshot(status("src1", "ACTIVE"), "a"));
+
+        JSONObject changed = snapshot(status("src1", "ACTIVE"), "a");
+        JSONObject result = (JSONObject) ((List<?>) changed.get(Search.RESULTS)).get(0);
+        JSONArray actions = new JSONArray();
+        actions.add("download");
+        ((JSONObject) result.get(Search.METACARD)).put(Search.ACTIONS, actions);
+        JSONObject message = encoder.encode(changed);
+
+        Map<?, ?> added = (Map<?, ?>) message.get(DeltaEncoder.ADDED);
+        assertThat(added.containsKey("src/a"), is(true));
+    }
+
+    @Test
+    public void testSnapshotReflectsLastMessage() {
+        DeltaEncoder encoder = new DeltaEncoder();
+        assertThat(encoder.snapshot(), is(nullValue()));
+
+        encoder.encode(snapshot(status("src1", "ACTIVE"), "a"));
+        encoder.encode(snapshot(status("src1", "SUCCEEDED"), "a", "b"));
+        JSONObject snapshot = encoder.snapshot();
+
+        assertThat((Boolean) snapshot.get(DeltaEncoder.DELTA), is(false));
+        assertThat((Long) snapshot.get(DeltaEncoder.SEQUENCE), is(2L));
+        assertThat(((List<?>) snapshot.get(Search.RESULTS)).size(), is(2));
+    }
+
+    private JSONObject snapshot(JSONObject status, String... ids) {
+        JSONArray results = new JSONArray();
+        for (String id : ids) {
+            JSONObject properties = new JSONObject();
+            properties.put("id", id);
+            properties.put("source-id", "src");
+
+            JSONObject metacard = new JSONObject();
+            metacard.put("properties", properties);
+
+            JSONObject result = new JSONObject();
+            result.put(Search.METACARD, metacard);
+            results.add(result);
+        }
+
+        JSONArray statuses = new JSONArray();
+        statuses.add(status);
+
+        JSONObject types = new JSONObject();
+        types.put("ddf.metacard", new JSONObject());
+
+        JSONObject snapshot = new JSONObject();
+        snapshot.put(Search.ID, "search");
+        snapshot.put(Search.HITS, (long) ids.length);
+        snapshot.put(Search.RESULTS, results);
+        snapshot.put(Search.STATUS, statuses);
+        snapshot.put(Search.METACARD_TYPES, types);
+        return snapshot;
+    }
+
+    private JSONObject status(String sourceId, String state) {
+        JSONObject status = new JSONObject();
+        status.put(Search.ID, sourceId);
+        status.put(Search.STATE, state);
+        return status;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.DictionaryEncoder}
+ */
+public class DictionaryEncoderTest {
+
+    @Test
+    public void testRoundTrip() {
+        JSONObject message = new JSONObject();
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < 3; i++) {
+            JSONObject result = new JSONObject();
+            result.put("source-id", "federated-source");
+            result.put("title", "title " + i);
+            result.put("~tilde", "~value");
+            result.put("relevance", i);
+            results.add(result);
+        }
+        message.put("results", results);
+        message.put("hits", 3);
+        message.put("~once", "~x1");
+
+        JSONObject encoded = DictionaryEncoder.encode(message);
+
+        assertThat(encoded.get(DictionaryEncoder.ENCODING),
+                is((Object) DictionaryEncoder.DICTIONARY));
+        List<?> strings = (List<?>) encoded.get(DictionaryEncoder.STRINGS);
+        assertThat(strings.contains("federated-source"), is(true));
+        assertThat(strings.contains("title 1"), is(false));
+        assertThat(decode(encoded.get(DictionaryEncoder.BODY), strings), is((Object) message));
+    }
+
+    private Object decode(Object value, List<?> strings) {
+        if (value instanceof String) {
+            return decodeString((String) value, strings);
+        } else if (value instanceof Map) {
+            Map<String, Object> map = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(decodeString((String) entry.getKey(), strings),
+                        decode(entry.getValue(), strings));
+            }
+            return map;
+        } else if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                list.add(decode(item, strings));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    private String decodeString(String value, List<?> strings) {
+        if (!value.startsWith("~")) {
+            return value;
+        } else if (value.startsWith("~~")) {
+            return value.substring(1);
+        }
+        return (String) strings.get(Integer.parseInt(value.substring(1), 36));
+    }
+}
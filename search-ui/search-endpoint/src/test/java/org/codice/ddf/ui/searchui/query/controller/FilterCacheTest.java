@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.geotools.filter.text.cql2.CQLException;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.FilterCache}
+ */
+public class FilterCacheTest {
+
+    @Test
+    public void testRepeatedCqlIsParsedOnce() throws CQLException {
+        FilterCache cache = new FilterCache(100);
+
+        Filter first = cache.get("title LIKE 'a'");
+        Filter second = cache.get("  title   LIKE\n'a' ");
+
+        assertThat(first == second, is(true));
+        assertThat(cache.getStats().hitCount(), is(1L));
+        assertThat(cache.getStats().missCount(), is(1L));
+    }
+
+    @Test
+    public void testWhitespaceInLiteralsIsKept() {
+        assertThat(FilterCache.normalize(" title  =  'a  b' "), is("title = 'a  b'"));
+        assertThat(FilterCache.normalize("title = 'it''s  a'"), is("title = 'it''s  a'"));
+        assertThat(FilterCache.normalize("title = 'a  b'"),
+                is(not(FilterCache.normalize("title = 'a b'"))));
+    }
+
+    @Test
+    public void testDisabledCacheParsesEveryTime() throws CQLException {
+        FilterCache cache = new FilterCache(0);
+
+        Filter first = cache.get("title LIKE 'a'");
+        Filter second = cache.get("title LIKE 'a'");
+
+        assertThat(first == second, is(false));
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test(expected = CQLException.class)
+    public void testInvalidCqlIsRejected() throws CQLException {
+        new FilterCache(100).get("title LIKE");
+    }
+}
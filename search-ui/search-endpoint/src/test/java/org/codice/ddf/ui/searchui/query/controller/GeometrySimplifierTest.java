@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.GeometrySimplifier}
+ */
+public class GeometrySimplifierTest {
+
+    @Test
+    public void testPolygonIsSimplifiedAndRounded() {
+        // a square with many nearly collinear positions along each side
+        List<Object> ring = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ring.add(Arrays.asList(i / 100.0, 0.000001 * (i % 2)));
+        }
+        for (int i = 0; i < 100; i++) {
+            ring.add(Arrays.asList(1.0, i / 100.0));
+        }
+        for (int i = 100; i > 0; i--) {
+            ring.add(Arrays.asList(i / 100.0, 1.0));
+        }
+        for (int i = 100; i >= 0; i--) {
+            ring.add(Arrays.asList(0.0, i / 100.0));
+        }
+        Map<String, Object> polygon = geometry("Polygon", Arrays.asList(ring));
+
+        Map<String, Object> simplified = GeometrySimplifier.simplify(polygon, 0.001);
+
+        assertThat(GeometrySimplifier.countPositions(polygon), is(401));
+        assertThat(GeometrySimplifier.countPositions(simplified), is(5));
+        List<?> simplifiedRing = (List<?>) ((List<?>) simplified.get("coordinates")).get(0);
+        assertThat(simplifiedRing.get(0), is(simplifiedRing.get(4)));
+        assertThat(((List<?>) simplifiedRing.get(0)).get(1), is((Object) 0.0));
+        // the original is left as it was
+        assertThat(((List<?>) polygon.get("coordinates")).get(0), is((Object) ring));
+    }
+
+    @Test
+    public void testSmallRingIsKept() {
+        List<Object> ring = new ArrayList<>();
+        ring.add(Arrays.asList(0.0, 0.0));
+        ring.add(Arrays.asList(0.0001, 0.0));
+        ring.add(Arrays.asList(0.0001, 0.0001));
+        ring.add(Arrays.asList(0.0, 0.0));
+
+        Map<String, Object> simplified = GeometrySimplifier
+                .simplify(geometry("Polygon", Arrays.asList(ring)), 1);
+
+        assertThat(GeometrySimplifier.countPositions(simplified), is(4));
+    }
+
+    @Test
+    public void testUnknownGeometryIsReturnedAsIs() {
+        Map<String, Object> unknown = geometry("Curve", Arrays.asList(1.0, 2.0));
+
+        assertThat(GeometrySimplifier.simplify(unknown, 0.1) == unknown, is(true));
+    }
+
+    private Map<String, Object> geometry(String type, Object coordinates) {
+        Map<String, Object> geometry = new HashMap<>();
+        geometry.put("type", type);
+        geometry.put("coordinates", coordinates);
+        return geometry;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.transform.CatalogTransformerException;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.MetacardJsonCache}
+ */
+public class MetacardJsonCacheTest {
+
+    private int conversions;
+
+    private Callable<JSONObject> converter;
+
+    @Before
+    public void setUp() {
+        conversions = 0;
+        converter = new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() {
+                conversions++;
+                JSONObject json = new JSONObject();
+                json.put("type", "Feature");
+                return json;
+            }
+        };
+    }
+
+    @Test
+    public void testRepeatedMetacardIsConvertedOnce() throws CatalogTransformerException {
+        MetacardJsonCache cache = new MetacardJsonCache(100, 1024 * 1024);
+        MetacardImpl metacard = metacard("1", new Date(1000));
+
+        cache.get(metacard, converter);
+        cache.get(metacard, converter);
+
+        assertThat(conversions, is(1));
+        assertThat(cache.getStats().hitCount(), is(1L));
+        assertThat(cache.getStats().missCount(), is(1L));
+    }
+
+    @Test
+    public void testModifiedMetacardIsConvertedAgain() throws CatalogTransformerException {
+        MetacardJsonCache cache = new MetacardJsonCache(100, 1024 * 1024);
+
+        cache.get(metacard("1", new Date(1000)), converter);
+        cache.get(metacard("1", new Date(2000)), converter);
+
+        assertThat(conversions, is(2));
+    }
+
+    @Test
+    public void testMetacardWithoutModifiedDateIsNotCached() throws CatalogTransformerException {
+        MetacardJsonCache cache = new MetacardJsonCache(100, 1024 * 1024);
+        MetacardImpl metacard = metacard("1", null);
+
+        cache.get(metacard, converter);
+        cache.get(metacard, converter);
+
+        assertThat(conversions, is(2));
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test
+    public void testDisabledCache() throws CatalogTransformerException {
+        MetacardJsonCache cache = new MetacardJsonCache(0, 1024 * 1024);
+        MetacardImpl metacard = metacard("1", new Date(1000));
+
+        cache.get(metacard, converter);
+        cache.get(metacard, converter);
+
+        assertThat(conversions, is(2));
+    }
+
+    @Test
+    public void testEntryLimit() throws CatalogTransformerException {
+        MetacardJsonCache cache = new MetacardJsonCache(2, 1024 * 1024);
+
+        for (int i = 0; i < 10; i++) {
+            cache.get(metacard(String.valueOf(i), new Date(1000)), converter);
+        }
+
+        assertThat(cache.size() <= 2, is(true));
+    }
+
+    private MetacardImpl metacard(String id, Date modified) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(id);
+        metacard.setSourceId("src");
+        metacard.setModifiedDate(modified);
+        return metacard;
+    }
+}
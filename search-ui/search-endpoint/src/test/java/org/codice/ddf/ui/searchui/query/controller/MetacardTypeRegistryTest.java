@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.impl.AttributeDescriptorImpl;
+import ddf.catalog.data.impl.BasicTypes;
+import ddf.catalog.data.impl.MetacardTypeImpl;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.MetacardTypeRegistry}
+ */
+public class MetacardTypeRegistryTest {
+
+    @Test
+    public void testSchemaIsSerializedOnce() {
+        MetacardTypeRegistry registry = new MetacardTypeRegistry();
+
+        MetacardTypeRegistry.Schema first = registry.getSchema(type("title"));
+        MetacardTypeRegistry.Schema second = registry.getSchema(type("title"));
+
+        assertThat(second.getVersion(), is(first.getVersion()));
+        assertThat(second.getJson(), is(sameInstance(first.getJson())));
+        assertThat(registry.getSchema("test").getVersion(), is(first.getVersion()));
+    }
+
+    @Test
+    public void testChangedTypeGetsNewVersion() {
+        MetacardTypeRegistry registry = new MetacardTypeRegistry();
+
+        MetacardTypeRegistry.Schema first = registry.getSchema(type("title"));
+        MetacardTypeRegistry.Schema second = registry.getSchema(type("title", "subject"));
+
+        assertThat(second.getVersion(), is(not(first.getVersion())));
+        assertThat(second.getJson().containsKey("subject"), is(true));
+    }
+
+    @Test
+    public void testUnknownType() {
+        MetacardTypeRegistry registry = new MetacardTypeRegistry();
+        registry.getSchema(BasicTypes.BASIC_METACARD);
+
+        assertThat(registry.getSchema(BasicTypes.BASIC_METACARD.getName()), is(not(nullValue())));
+        assertThat(registry.getSchema("unknown"), is(nullValue()));
+    }
+
+    private MetacardTypeImpl type(String... attributes) {
+        Set<AttributeDescriptor> descriptors = new HashSet<AttributeDescriptor>();
+        for (String attribute : attributes) {
+            descriptors.add(new AttributeDescriptorImpl(attribute, true, true, false, false,
+                    BasicTypes.STRING_TYPE));
+        }
+        return new MetacardTypeImpl("test", descriptors);
+    }
+}
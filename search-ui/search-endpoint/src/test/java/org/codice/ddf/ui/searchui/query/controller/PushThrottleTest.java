@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.PushThrottle}
+ */
+public class PushThrottleTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private ScheduledExecutorService scheduler;
+
+    private List<Integer> pushed;
+
+    @Before
+    public void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        doReturn(mock(ScheduledFuture.class)).when(scheduler)
+                .schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        pushed = new ArrayList<>();
+    }
+
+    @Test
+    public void testPushesRunImmediatelyWithoutInterval() {
+        PushThrottle throttle = new PushThrottle(scheduler, DIRECT_EXECUTOR, 0);
+
+        throttle.submit("search", push(1), false);
+        throttle.submit("search", push(2), false);
+
+        assertThat(pushed.size(), is(2));
+    }
+
+    @Test
+    public void testHeldBackPushesAreCoalesced() {
+        PushThrottle throttle = new PushThrottle(scheduler, DIRECT_EXECUTOR, 60000);
+
+        throttle.submit("search", push(1), false);
+        throttle.submit("search", push(2), false);
+        throttle.submit("search", push(3), false);
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(1)).schedule(captor.capture(), anyLong(),
+                eq(TimeUnit.MILLISECONDS));
+        captor.getValue().run();
+
+        assertThat(pushed.size(), is(2));
+        assertThat(pushed.get(0), is(1));
+        assertThat(pushed.get(1), is(3));
+        assertThat(throttle.getCoalescedCount(), is(1L));
+    }
+
+    @Test
+    public void testFlushReplacesHeldBackPush() {
+        PushThrottle throttle = new PushThrottle(scheduler, DIRECT_EXECUTOR, 60000);
+
+        throttle.submit("search", push(1), false);
+        throttle.submit("search", push(2), false);
+        throttle.submit("search", push(3), true);
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(captor.capture(), anyLong(), any(TimeUnit.class));
+        captor.getValue().run();
+
+        assertThat(pushed.size(), is(2));
+        assertThat(pushed.get(1), is(3));
+    }
+
+    private Runnable push(final int n) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                pushed.add(n);
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.codice.ddf.ui.searchui.query.model.SearchRequest;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.QueryCoalescer}
+ */
+public class QueryCoalescerTest {
+
+    private final QueryCoalescer coalescer = new QueryCoalescer();
+
+    @Test
+    public void testIdenticalSearchesShareExecution() {
+        SearchRequest execution = request("execution");
+
+        QueryCoalescer.Group first = coalescer.subscribe("key", request("a"), "s1", execution);
+        QueryCoalescer.Group second = coalescer.subscribe("key", request("b"), "s2",
+                request("other"));
+
+        assertThat(second, sameInstance(first));
+        assertThat(second.getExecution(), sameInstance(execution));
+        assertThat(coalescer.getGroup("execution"), sameInstance(first));
+        assertThat(coalescer.getSubscriber("b").getSessionId(), is("s2"));
+        assertThat(coalescer.getCoalescedCount(), is(1L));
+    }
+
+    @Test
+    public void testLastUnsubscribeAbandonsExecution() {
+        SearchRequest execution = request("execution");
+        coalescer.subscribe("key", request("a"), null, execution);
+        coalescer.subscribe("key", request("b"), null, request("other"));
+
+        assertThat(coalescer.unsubscribe("a"), nullValue());
+        assertThat(coalescer.unsubscribe("b"), sameInstance(execution));
+        assertThat(coalescer.size(), is(0));
+    }
+
+    @Test
+    public void testFinishedExecutionIsNotJoined() {
+        coalescer.subscribe("key", request("a"), null, request("execution"));
+
+        List<QueryCoalescer.Subscriber> subscribers = coalescer.finish("execution");
+        SearchRequest next = request("next");
+        QueryCoalescer.Group group = coalescer.subscribe("key", request("b"), null, next);
+
+        assertThat(subscribers.size(), is(1));
+        assertThat(coalescer.getSubscriber("a"), nullValue());
+        assertThat(group.getExecution(), sameInstance(next));
+    }
+
+    private SearchRequest request(String id) {
+        return new SearchRequest(Collections.singleton("source"), null, id);
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.QueryScheduler}
+ */
+public class QuerySchedulerTest {
+
+    private ManualExecutorService executorService;
+
+    private List<String> ran;
+
+    @Before
+    public void setUp() {
+        executorService = new ManualExecutorService();
+        ran = new ArrayList<>();
+    }
+
+    @Test
+    public void testTasksAreServedRoundRobinAcrossUsers() {
+        QueryScheduler scheduler = new QueryScheduler(executorService, 1, 100, 100);
+
+        scheduler.submit("carol", "src1", new Task("c1"));
+        scheduler.submit("alice", "src1", new Task("a1"));
+        scheduler.submit("alice", "src1", new Task("a2"));
+        scheduler.submit("alice", "src2", new Task("a3"));
+        scheduler.submit("bob", "src1", new Task("b1"));
+
+        assertThat(scheduler.getRunningCount(), is(1));
+        assertThat(scheduler.getQueuedCount(), is(4));
+
+        executorService.runAll();
+
+        assertThat(ran, is(Arrays.asList("c1", "a1", "b1", "a3", "a2")));
+        assertThat(scheduler.getRunningCount(), is(0));
+        assertThat(scheduler.getQueuedCount(), is(0));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testPerUserQueueLimit() {
+        QueryScheduler scheduler = new QueryScheduler(executorService, 1, 100, 1);
+
+        scheduler.submit("alice", "src1", new Task("a1"));
+        scheduler.submit("alice", "src1", new Task("a2"));
+        scheduler.submit("alice", "src1", new Task("a3"));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testPerUserQueueLimitAppliesToFirstTask() {
+        QueryScheduler scheduler = new QueryScheduler(executorService, 1, 100, 0);
+
+        scheduler.submit("alice", "src1", new Task("a1"));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testTotalQueueLimit() {
+        QueryScheduler scheduler = new QueryScheduler(executorService, 1, 1, 100);
+
+        scheduler.submit("alice", "src1", new Task("a1"));
+        scheduler.submit("bob", "src1", new Task("b1"));
+        scheduler.submit("carol", "src1", new Task("c1"));
+    }
+
+    @Test
+    public void testShutdownDiscardsQueuedTasks() {
+        QueryScheduler scheduler = new QueryScheduler(executorService, 1, 100, 100);
+
+        scheduler.submit("alice", "src1", new Task("a1"));
+        scheduler.submit("bob", "src1", new Task("b1"));
+        scheduler.shutdown();
+        executorService.runAll();
+
+        assertThat(ran, is(Arrays.asList("a1")));
+        assertThat(scheduler.getQueuedCount(), is(0));
+    }
+
+    @Test
+    public void testSlotsTakenOutsideTheSchedulerHoldBackTasks() {
+        QueryScheduler scheduler = new QueryScheduler(executorService, 1, 100, 100);
+
+        assertThat(scheduler.tryAcquireSlot(), is(true));
+        assertThat(scheduler.tryAcquireSlot(), is(false));
+        scheduler.submit("alice", "src1", new Task("a1"));
+        executorService.runAll();
+
+        assertThat(ran.isEmpty(), is(true));
+        assertThat(scheduler.getQueuedCount(), is(1));
+
+        scheduler.releaseSlot();
+        executorService.runAll();
+
+        assertThat(ran, is(Arrays.asList("a1")));
+    }
+
+    private class Task implements Runnable {
+
+        private final String name;
+
+        Task(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            ran.add(name);
+        }
+    }
+
+    /**
+     * Holds on to submitted work until the test decides to run it.
+     */
+    private static class ManualExecutorService extends AbstractExecutorService {
+
+        private final LinkedList<Runnable> pending = new LinkedList<>();
+
+        void runAll() {
+            while (!pending.isEmpty()) {
+                pending.removeFirst().run();
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>(pending);
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
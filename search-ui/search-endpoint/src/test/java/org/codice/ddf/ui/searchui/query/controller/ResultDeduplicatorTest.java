@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.opengis.filter.sort.SortOrder;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.util.impl.RelevanceResultComparator;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.ResultDeduplicator}
+ */
+public class ResultDeduplicatorTest {
+
+    private final RelevanceResultComparator comparator = new RelevanceResultComparator(
+            SortOrder.DESCENDING);
+
+    @Test
+    public void testMergerKeepsHighestRankedCopy() {
+        ResultDeduplicator deduplicator = new ResultDeduplicator(null);
+        ResultMerger merger = new ResultMerger(comparator, 10, deduplicator);
+
+        merger.merge(Arrays.asList(result("a", "src1", 0.5), result("b", "src1", 0.4)));
+        List<Result> merged = merger.merge(
+                Arrays.asList(result("a", "src2", 0.9), result("c", "src2", 0.1)));
+
+        assertThat(merged.size(), is(3));
+        assertThat(merged.get(0).getMetacard().getSourceId(), is("src2"));
+        assertThat(merged.get(0).getMetacard().getId(), is("a"));
+        assertThat(deduplicator.getDuplicateCounts().get("src1"), is(1L));
+    }
+
+    @Test
+    public void testMergerDropsLowerRankedCopy() {
+        ResultDeduplicator deduplicator = new ResultDeduplicator(null);
+        ResultMerger merger = new ResultMerger(comparator, 10, deduplicator);
+
+        merger.merge(Arrays.asList(result("a", "src1", 0.9)));
+        List<Result> merged = merger.merge(
+                Arrays.asList(result("a", "src2", 0.5), result("b", "src2", 0.4)));
+
+        assertThat(merged.size(), is(2));
+        assertThat(merged.get(0).getMetacard().getSourceId(), is("src1"));
+        assertThat(deduplicator.getDuplicateCounts().get("src2"), is(1L));
+    }
+
+    @Test
+    public void testDeduplicateOnAttribute() {
+        ResultDeduplicator deduplicator = new ResultDeduplicator("checksum");
+        Result first = result("a", "src1", 0.9);
+        ((MetacardImpl) first.getMetacard()).setAttribute("checksum", "123");
+        Result second = result("b", "src2", 0.5);
+        ((MetacardImpl) second.getMetacard()).setAttribute("checksum", "123");
+        Result third = result("c", "src2", 0.4);
+
+        List<Result> unique = deduplicator.deduplicate(Arrays.asList(first, second, third),
+                comparator);
+
+        assertThat(unique, is(Arrays.asList(first, third)));
+        assertThat(deduplicator.getDuplicateCounts().get("src2"), is(1L));
+    }
+
+    @Test
+    public void testLongHashSet() {
+        ResultDeduplicator.LongHashSet set = new ResultDeduplicator.LongHashSet();
+
+        for (long i = -1000; i < 1000; i++) {
+            assertThat(set.add(i * 7919), is(true));
+        }
+        assertThat(set.add(0), is(false));
+        assertThat(set.add(7919), is(false));
+        assertThat(set.contains(-7919), is(true));
+        assertThat(set.contains(1), is(false));
+        assertThat(set.size(), is(2000));
+    }
+
+    private Result result(String id, String sourceId, double relevance) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(id);
+        metacard.setSourceId(sourceId);
+        ResultImpl result = new ResultImpl(metacard);
+        result.setRelevanceScore(relevance);
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.opengis.filter.sort.SortOrder;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.util.impl.RelevanceResultComparator;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.ResultMerger}
+ */
+public class ResultMergerTest {
+
+    @Test
+    public void testMergeKeepsTopResultsInOrder() {
+        ResultMerger merger = new ResultMerger(
+                new RelevanceResultComparator(SortOrder.DESCENDING), 3);
+
+        merger.merge(results(0.5, 0.9, 0.1));
+        List<Result> merged = merger.merge(results(0.7, 0.2, 0.95));
+
+        assertThat(scores(merged), is(Arrays.asList(0.95, 0.9, 0.7)));
+        assertThat(merger.size(), is(3));
+    }
+
+    @Test
+    public void testMergeWithFewerResultsThanPage() {
+        ResultMerger merger = new ResultMerger(
+                new RelevanceResultComparator(SortOrder.ASCENDING), 10);
+
+        merger.merge(results(0.5, 0.9));
+        List<Result> merged = merger.merge(results(0.1));
+
+        assertThat(scores(merged), is(Arrays.asList(0.1, 0.5, 0.9)));
+    }
+
+    @Test
+    public void testMergeKeepsEquallyRankedResults() {
+        ResultMerger merger = new ResultMerger(
+                new RelevanceResultComparator(SortOrder.DESCENDING), 10);
+
+        merger.merge(results(0.5, 0.5));
+        List<Result> merged = merger.merge(results(0.5));
+
+        assertThat(merged.size(), is(3));
+    }
+
+    @Test
+    public void testMergeEmptyAndNullResponses() {
+        ResultMerger merger = new ResultMerger(
+                new RelevanceResultComparator(SortOrder.DESCENDING), 10);
+
+        merger.merge(null);
+        List<Result> merged = merger.merge(new ArrayList<Result>());
+
+        assertThat(merged.isEmpty(), is(true));
+    }
+
+    private List<Result> results(double... scores) {
+        List<Result> results = new ArrayList<>();
+        for (double score : scores) {
+            Result result = mock(Result.class);
+            when(result.getRelevanceScore()).thenReturn(score);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private List<Double> scores(List<Result> results) {
+        List<Double> scores = new ArrayList<>();
+        for (Result result : results) {
+            scores.add(result.getRelevanceScore());
+        }
+        return scores;
+    }
+}
@@ -22,7 +22,9 @@
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -45,6 +47,8 @@
 import java.util.concurrent.TimeoutException;
 
 import org.codice.ddf.ui.searchui.query.actions.ActionRegistryImpl;
+import org.codice.ddf.ui.searchui.query.model.ClusterAggregator;
+import org.codice.ddf.ui.searchui.query.model.Facets;
 import org.codice.ddf.ui.searchui.query.model.Search;
 import org.codice.ddf.ui.searchui.query.model.SearchRequest;
 import org.cometd.bayeux.server.BayeuxServer;
@@ -55,6 +59,7 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.opengis.filter.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +72,7 @@
 import ddf.catalog.operation.Query;
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.operation.impl.QueryImpl;
 import ddf.catalog.operation.impl.QueryResponseImpl;
 import ddf.catalog.source.SourceUnavailableException;
 import ddf.catalog.source.UnsupportedQueryException;
@@ -225,6 +231,280 @@ public void testExecuteQueryCacheDisabled() throws Exception {
         assertThat(queryRequestCaptor.getValue().getProperties().size(), is(0));
     }
 
+    /**
+     * Verify that nothing is pushed for a search that was cancelled while its queries ran.
+     */
+    @Test
+    public void testCancelledSearchIsNotPushed() throws Exception {
+        final String ID = "id";
+        Set<String> srcIds = new HashSet<>(1);
+        srcIds.add(ID);
+        SearchRequest request = new SearchRequest(srcIds, mock(Query.class), ID);
+        BayeuxServer bayeuxServer = mock(BayeuxServer.class);
+        ServerChannel channel = mock(ServerChannel.class);
+        when(bayeuxServer.getChannel(any(String.class))).thenReturn(channel);
+        searchController.setCacheDisabled(false);
+        searchController.setBayeuxServer(bayeuxServer);
+
+        request.cancel();
+        searchController.executeQuery(request, mockServerSession, mockServerSession, null);
+
+        verify(channel, never()).publish(any(ServerSession.class),
+                any(ServerMessage.Mutable.class), anyString());
+        assertThat(searchController.getSearchStore().get(ID), is(nullValue()));
+    }
+
+    /**
+     * Verify that a streamed search is pushed in chunks, with the statuses on the last chunk.
+     */
+    @Test
+    public void testStreamedResultsArePushedInChunks() throws Exception {
+        final String ID = "id";
+        Set<String> srcIds = new HashSet<>(1);
+        srcIds.add(ID);
+        SearchRequest request = new SearchRequest(srcIds, mock(Query.class), ID);
+        request.setStreamResults(true);
+        BayeuxServer bayeuxServer = mock(BayeuxServer.class);
+        ServerChannel channel = mock(ServerChannel.class);
+        when(bayeuxServer.getChannel(any(String.class))).thenReturn(channel);
+        ArgumentCaptor<ServerMessage.Mutable> reply = ArgumentCaptor
+                .forClass(ServerMessage.Mutable.class);
+        searchController.setCacheDisabled(true);
+        searchController.setResultChunkSize(1);
+        searchController.setBayeuxServer(bayeuxServer);
+
+        searchController.executeQuery(request, mockServerSession, null);
+
+        verify(channel, times(2)).publish(any(ServerSession.class), reply.capture(),
+                anyString());
+        List<Mutable> replies = reply.getAllValues();
+        assertReplies(replies);
+        for (int i = 0; i < 2; i++) {
+            assertThat(replies.get(i).get(Search.CHUNK), is((Object) i));
+            assertThat(replies.get(i).get(Search.CHUNKS), is((Object) 2));
+            assertThat(((List<?>) replies.get(i).get(Search.RESULTS)).size(), is(1));
+        }
+        assertThat(replies.get(0).get(Search.STATUS), is(nullValue()));
+        assertThat(replies.get(1).get(Search.STATUS), is(not(nullValue())));
+    }
+
+    /**
+     * Verify that only the requested attributes are sent with each result, besides its id, source
+     * and type.
+     */
+    @Test
+    public void testResultsAreProjectedToRequestedFields() throws Exception {
+        final String ID = "id";
+        Set<String> srcIds = new HashSet<>(1);
+        srcIds.add(ID);
+        SearchRequest request = new SearchRequest(srcIds, mock(Query.class), ID);
+        request.setFields(Collections.singleton("title"));
+        BayeuxServer bayeuxServer = mock(BayeuxServer.class);
+        ServerChannel channel = mock(ServerChannel.class);
+        when(bayeuxServer.getChannel(any(String.class))).thenReturn(channel);
+        ArgumentCaptor<ServerMessage.Mutable> reply = ArgumentCaptor
+                .forClass(ServerMessage.Mutable.class);
+        searchController.setCacheDisabled(true);
+        searchController.setBayeuxServer(bayeuxServer);
+
+        searchController.executeQuery(request, mockServerSession, null);
+
+        verify(channel).publish(any(ServerSession.class), reply.capture(), anyString());
+        List<?> results = (List<?>) reply.getValue().get(Search.RESULTS);
+        assertThat(results.size(), is(2));
+        for (Object result : results) {
+            Map<?, ?> metacard = (Map<?, ?>) ((Map<?, ?>) result).get(Search.METACARD);
+            Map<?, ?> properties = (Map<?, ?>) metacard.get(Search.PROPERTIES);
+            assertThat(metacard.get(Search.PROJECTED), is((Object) true));
+            assertThat(metacard.get(Search.GEOMETRY), is(not(nullValue())));
+            assertThat(properties.get("title"), is(not(nullValue())));
+            assertThat(properties.get("id"), is(not(nullValue())));
+            assertThat(properties.get("metadata-content-type"), is(nullValue()));
+            assertThat(properties.get("modified"), is(nullValue()));
+        }
+    }
+
+    /**
+     * Verify that the clusters are read by one cache query over the results of the search once
+     * all sources have responded, not by a query per source.
+     */
+    @Test
+    public void testClustersAreReadFromCacheOnceSearchIsDone() throws Exception {
+        final String ID = "id";
+        Set<String> srcIds = new HashSet<>(1);
+        srcIds.add(ID);
+        Query query = mock(Query.class);
+        when(query.getStartIndex()).thenReturn(1);
+        when(query.getPageSize()).thenReturn(1);
+        SearchRequest request = new SearchRequest(srcIds, query, ID);
+        request.setClusterCellSize(10);
+        BayeuxServer bayeuxServer = mock(BayeuxServer.class);
+        ServerChannel channel = mock(ServerChannel.class);
+        when(bayeuxServer.getChannel(any(String.class))).thenReturn(channel);
+        ArgumentCaptor<QueryRequest> queryRequest = ArgumentCaptor.forClass(QueryRequest.class);
+        ArgumentCaptor<ServerMessage.Mutable> reply = ArgumentCaptor
+                .forClass(ServerMessage.Mutable.class);
+        searchController.setCacheDisabled(false);
+        searchController.setClusterMaxResults(500);
+        searchController.setBayeuxServer(bayeuxServer);
+
+        searchController.executeQuery(request, mockServerSession, null);
+
+        // initial cache query, index query, cache query and cluster query
+        verify(framework, timeout(1000).times(4)).query(queryRequest.capture());
+        QueryRequest clusterRequest = queryRequest.getAllValues().get(3);
+        assertThat(clusterRequest.getPropertyValue("mode"), is((Object) "cache"));
+        assertThat(clusterRequest.getQuery().getStartIndex(), is(1));
+        assertThat(clusterRequest.getQuery().getPageSize(), is(500));
+
+        verify(channel, timeout(1000).times(3))
+                .publish(any(ServerSession.class), reply.capture(), anyString());
+        List<?> clusters = (List<?>) reply.getValue().get(Search.CLUSTERS);
+        assertThat(clusters.size(), is(1));
+        assertThat(((Map<?, ?>) clusters.get(0)).get(ClusterAggregator.COUNT), is((Object) 2));
+    }
+
+    /**
+     * Verify that the facets are counted over the cached results of the search, counting a
+     * result returned by several sources once.
+     */
+    @Test
+    public void testFacetsCountCachedResultsOnce() throws Exception {
+        Set<String> srcIds = new HashSet<>(2);
+        srcIds.add("src1");
+        srcIds.add("src2");
+        SearchRequest request = new SearchRequest(srcIds, mock(Query.class), "id");
+        request.setFacets(Collections.singletonList("title"), null, null);
+        BayeuxServer bayeuxServer = mock(BayeuxServer.class);
+        ServerChannel channel = mock(ServerChannel.class);
+        when(bayeuxServer.getChannel(any(String.class))).thenReturn(channel);
+        ArgumentCaptor<ServerMessage.Mutable> reply = ArgumentCaptor
+                .forClass(ServerMessage.Mutable.class);
+        searchController.setCacheDisabled(false);
+        searchController.setBayeuxServer(bayeuxServer);
+
+        searchController.executeQuery(request, mockServerSession, null);
+
+        verify(channel, timeout(1000).atLeastOnce())
+                .publish(any(ServerSession.class), reply.capture(), anyString());
+        Facets expected = new Facets(Collections.singletonList("title"), null, null);
+        expected.add("cache", framework.query(mock(QueryRequest.class)).getResults());
+        assertThat(reply.getValue().get(Search.FACETS), is((Object) expected.toJson()));
+    }
+
+    /**
+     * Verify that without the cache the results the search holds are clustered, without another
+     * query.
+     */
+    @Test
+    public void testClustersCoverHeldResultsWithoutCache() throws Exception {
+        final String ID = "id";
+        Set<String> srcIds = new HashSet<>(1);
+        srcIds.add(ID);
+        SearchRequest request = new SearchRequest(srcIds, mock(Query.class), ID);
+        request.setClusterCellSize(10);
+        BayeuxServer bayeuxServer = mock(BayeuxServer.class);
+        ServerChannel channel = mock(ServerChannel.class);
+        when(bayeuxServer.getChannel(any(String.class))).thenReturn(channel);
+        ArgumentCaptor<ServerMessage.Mutable> reply = ArgumentCaptor
+                .forClass(ServerMessage.Mutable.class);
+        searchController.setCacheDisabled(true);
+        searchController.setBayeuxServer(bayeuxServer);
+
+        searchController.executeQuery(request, mockServerSession, null);
+
+        verify(framework, times(1)).query(any(QueryRequest.class));
+        verify(channel).publish(any(ServerSession.class), reply.capture(), anyString());
+        List<?> clusters = (List<?>) reply.getValue().get(Search.CLUSTERS);
+        assertThat(clusters.size(), is(1));
+        assertThat(((Map<?, ?>) clusters.get(0)).get(ClusterAggregator.COUNT), is((Object) 2));
+    }
+
+    /**
+     * Verify that another page of a kept window is answered from it, while the page the window
+     * was fetched for is sent to the sources again.
+     */
+    @Test
+    public void testOnlyOtherPagesAreAnsweredFromWindow() throws Exception {
+        final String ID = "id";
+        Set<String> srcIds = new HashSet<>(1);
+        srcIds.add(ID);
+        BayeuxServer bayeuxServer = mock(BayeuxServer.class);
+        ServerChannel channel = mock(ServerChannel.class);
+        when(bayeuxServer.getChannel(any(String.class))).thenReturn(channel);
+        searchController.setCacheDisabled(true);
+        searchController.setResultWindowPages(2);
+        searchController.setBayeuxServer(bayeuxServer);
+
+        searchController.executeQuery(new SearchRequest(srcIds, page(1), ID), mockServerSession,
+                null);
+        verify(framework, times(1)).query(any(QueryRequest.class));
+
+        searchController.executeQuery(new SearchRequest(srcIds, page(1), ID), mockServerSession,
+                null);
+        verify(framework, times(2)).query(any(QueryRequest.class));
+
+        searchController.executeQuery(new SearchRequest(srcIds, page(2), ID), mockServerSession,
+                null);
+        verify(framework, times(2)).query(any(QueryRequest.class));
+        assertThat(searchController.getResultWindows().getHitCount(), is(1L));
+    }
+
+    /**
+     * Verify that a metacard is fetched through the scheduler with a short deadline and handed to
+     * the callback.
+     */
+    @Test
+    public void testMetacardIsFetchedWithShortDeadline() throws Exception {
+        final List<JSONObject> fetched = new ArrayList<>();
+        ArgumentCaptor<QueryRequest> queryRequest = ArgumentCaptor.forClass(QueryRequest.class);
+
+        searchController.fetchMetacard("src", page(1), mockServerSession, null,
+                new SearchController.MetacardCallback() {
+                    @Override
+                    public void onMetacard(JSONObject metacard) {
+                        fetched.add(metacard);
+                    }
+                });
+
+        verify(framework).query(queryRequest.capture());
+        assertThat(queryRequest.getValue().getSourceIds().contains("src"), is(true));
+        assertThat(queryRequest.getValue().getQuery().getTimeoutMillis() <= 10000, is(true));
+        assertThat(fetched.size(), is(1));
+        assertThat(fetched.get(0), is(not(nullValue())));
+    }
+
+    /**
+     * Verify that a search can only be cancelled or replaced by the session that started it.
+     */
+    @Test
+    public void testSearchOfAnotherSessionIsNotCancelled() throws Exception {
+        // source queries are never run, so the search stays active
+        SearchController controller = new SearchController(framework,
+                new ActionRegistryImpl(Collections.<ActionProvider>emptyList())) {
+            @Override
+            ExecutorService getExecutorService() {
+                return mock(ExecutorService.class);
+            }
+        };
+        controller.setCacheDisabled(true);
+        controller.setBayeuxServer(mock(BayeuxServer.class));
+        ServerSession otherSession = mock(ServerSession.class);
+        when(otherSession.getId()).thenReturn("other");
+
+        SearchRequest request = new SearchRequest(Collections.singleton("id"),
+                mock(Query.class), "search");
+        controller.executeQuery(request, mockServerSession, mockServerSession, null);
+        SearchRequest replacement = new SearchRequest(Collections.singleton("id"),
+                mock(Query.class), "search");
+        controller.executeQuery(replacement, mockServerSession, otherSession, null);
+
+        assertThat(controller.cancelSearch("search", "other"), is(false));
+        assertThat(request.isCancelled(), is(false));
+        assertThat(controller.cancelSearch("search", MOCK_SESSION_ID), is(true));
+        assertThat(request.isCancelled(), is(true));
+    }
+
     private void assertReplies(List<Mutable> replies) {
         for (Mutable reply : replies) {
             assertThat(reply, is(not(nullValue())));
@@ -260,6 +540,10 @@ private void assertReplies(List<Mutable> replies) {
         }
     }
 
+    private Query page(int startIndex) {
+        return new QueryImpl(Filter.INCLUDE, startIndex, 1, null, false, 0);
+    }
+
     private CatalogFramework createFramework() {
         final long COUNT = 2;
 
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.operation.SourceInfoRequest;
+import ddf.catalog.operation.SourceInfoResponse;
+import ddf.catalog.source.SourceDescriptor;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.SourceAvailability}
+ */
+public class SourceAvailabilityTest {
+
+    private static final Set<String> ALL_SOURCES = new HashSet<>(Arrays.asList("up", "down"));
+
+    private CatalogFramework framework;
+
+    private ScheduledExecutorService scheduler;
+
+    private long now;
+
+    @Before
+    public void setUp() throws Exception {
+        framework = mock(CatalogFramework.class);
+        scheduler = mock(ScheduledExecutorService.class);
+        now = 1000;
+
+        SourceDescriptor up = mock(SourceDescriptor.class);
+        when(up.getSourceId()).thenReturn("up");
+        when(up.isAvailable()).thenReturn(true);
+        SourceDescriptor down = mock(SourceDescriptor.class);
+        when(down.getSourceId()).thenReturn("down");
+        when(down.isAvailable()).thenReturn(false);
+        SourceInfoResponse response = mock(SourceInfoResponse.class);
+        when(response.getSourceInfo()).thenReturn(new HashSet<>(Arrays.asList(up, down)));
+
+        when(framework.getSourceInfo(any(SourceInfoRequest.class))).thenReturn(response);
+        when(framework.getSourceIds()).thenReturn(ALL_SOURCES);
+    }
+
+    @Test
+    public void testStatusIsCollectedOnEverySearchWhenRefreshIsDisabled() throws Exception {
+        SourceAvailability availability = new SourceAvailability(framework, scheduler, 0, 0);
+
+        assertThat(availability.getSourceIds(), is(Collections.singleton("up")));
+        assertThat(availability.getSourceIds(), is(Collections.singleton("up")));
+
+        verify(framework, times(2)).getSourceInfo(any(SourceInfoRequest.class));
+    }
+
+    @Test
+    public void testSearchUsesSnapshotWithoutCollectingStatus() throws Exception {
+        SourceAvailability availability = availability(30000, 120000);
+
+        // nothing collected yet, so every source is queried
+        assertThat(availability.getSourceIds(), is(ALL_SOURCES));
+        verify(framework, never()).getSourceInfo(any(SourceInfoRequest.class));
+
+        availability.refresh();
+        now += 60000;
+
+        assertThat(availability.getSourceIds(), is(Collections.singleton("up")));
+        verify(framework, times(1)).getSourceInfo(any(SourceInfoRequest.class));
+    }
+
+    @Test
+    public void testStaleSnapshotIsNotUsed() throws Exception {
+        SourceAvailability availability = availability(30000, 120000);
+        availability.refresh();
+
+        now += 120001;
+
+        assertThat(availability.getSourceIds(), is(ALL_SOURCES));
+    }
+
+    private SourceAvailability availability(long refreshIntervalMillis, long maxAgeMillis) {
+        return new SourceAvailability(framework, scheduler, refreshIntervalMillis, maxAgeMillis) {
+            @Override
+            long now() {
+                return now;
+            }
+        };
+    }
+}
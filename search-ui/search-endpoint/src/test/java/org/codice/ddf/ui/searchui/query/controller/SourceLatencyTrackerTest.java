@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.controller.SourceLatencyTracker}
+ */
+public class SourceLatencyTrackerTest {
+
+    @Test
+    public void testTooFewSamples() {
+        SourceLatencyTracker tracker = new SourceLatencyTracker(100, 10);
+
+        for (int i = 0; i < 9; i++) {
+            tracker.record("src", 100);
+        }
+
+        assertThat(tracker.getPercentile("src", 95), is(-1L));
+        assertThat(tracker.getPercentile("other", 95), is(-1L));
+    }
+
+    @Test
+    public void testPercentiles() {
+        SourceLatencyTracker tracker = new SourceLatencyTracker(100, 10);
+
+        for (int i = 1; i <= 100; i++) {
+            tracker.record("src", i);
+        }
+
+        assertThat(tracker.getPercentile("src", 50), is(50L));
+        assertThat(tracker.getPercentile("src", 95), is(95L));
+        assertThat(tracker.getPercentile("src", 99), is(99L));
+        assertThat(tracker.getPercentile("src", 100), is(100L));
+    }
+
+    @Test
+    public void testOnlyRecentSamplesAreKept() {
+        SourceLatencyTracker tracker = new SourceLatencyTracker(10, 10);
+
+        for (int i = 0; i < 10; i++) {
+            tracker.record("src", 10000);
+        }
+        for (int i = 0; i < 10; i++) {
+            tracker.record("src", 10);
+        }
+
+        assertThat(tracker.getPercentile("src", 100), is(10L));
+    }
+}
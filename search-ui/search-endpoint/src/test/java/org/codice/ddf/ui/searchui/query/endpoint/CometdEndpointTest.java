@@ -17,11 +17,18 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Dictionary;
 
+import javax.servlet.Filter;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 
@@ -40,6 +47,7 @@
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -64,6 +72,8 @@ public class CometdEndpointTest {
 
     private ServerMessage mockServerMessage = mock(ServerMessage.class);
 
+    private BundleContext bundleContext = mock(BundleContext.class);
+
     /**
      * @throws java.lang.Exception
      */
@@ -132,7 +142,7 @@ public MarkedReference<ServerChannel> answer(
 
         // Create the CometdEndpoint, passing in the mocked CometdServlet
         cometdEndpoint = new CometdEndpoint(cometdServlet, mock(CatalogFramework.class),
-                mock(FilterBuilder.class), mock(PersistentStore.class), mock(BundleContext.class),
+                mock(FilterBuilder.class), mock(PersistentStore.class), bundleContext,
                 mock(EventAdmin.class), new ActionRegistryImpl(Collections.EMPTY_LIST));
     }
 
@@ -172,4 +182,23 @@ public void testCanHandshakeRegistersUserWithNotificationController() throws Ser
                 cometdEndpoint.notificationController.getSessionByUserId(MOCK_SESSION_ID));
     }
 
+    /**
+     * Test method that verifies the compression filter is also mapped for the ASYNC dispatches
+     * that deliver the messages of a resumed long poll.
+     *
+     * @throws ServletException
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompressionFilterAppliesToResumedPolls() throws ServletException {
+        cometdEndpoint.init();
+
+        ArgumentCaptor<Dictionary> properties = ArgumentCaptor.forClass(Dictionary.class);
+        verify(bundleContext).registerService(eq(Filter.class), any(Filter.class),
+                properties.capture());
+        assertTrue(Arrays.asList((String[]) properties.getValue().get("filter-mapping-dispatcher"))
+                .contains("ASYNC"));
+        assertEquals("true", properties.getValue().get("async-supported"));
+    }
+
 }
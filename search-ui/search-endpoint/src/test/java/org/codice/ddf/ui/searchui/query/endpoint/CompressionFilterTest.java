@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.endpoint;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.endpoint.CompressionFilter}
+ */
+public class CompressionFilterTest {
+
+    private final CompressionFilter filter = new CompressionFilter();
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    private HttpServletRequest request;
+
+    private HttpServletResponse response;
+
+    @Before
+    public void setUp() throws IOException {
+        filter.setEnabled(true);
+        filter.setMinimumSize(100);
+
+        request = mock(HttpServletRequest.class);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+        response = mock(HttpServletResponse.class);
+        when(response.getCharacterEncoding()).thenReturn("UTF-8");
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                written.write(b);
+            }
+        });
+    }
+
+    @Test
+    public void testLargeResponseIsCompressed() throws Exception {
+        String body = repeat("[{\"channel\":\"/search\",\"data\":{}}]", 20);
+
+        filter.doFilter(request, response, writing(body));
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response).setContentLength(written.size());
+        assertThat(gunzip(written.toByteArray()), is(body));
+    }
+
+    @Test
+    public void testSmallResponseIsNotCompressed() throws Exception {
+        filter.doFilter(request, response, writing("[]"));
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        assertThat(written.toString("UTF-8"), is("[]"));
+    }
+
+    @Test
+    public void testSuspendedResponseIsLeftAlone() throws Exception {
+        filter.doFilter(request, response, writing(""));
+
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testResumedPollIsCompressed() throws Exception {
+        String body = repeat("[{\"channel\":\"/search\",\"data\":{}}]", 20);
+
+        // the poll is suspended on its first pass and writes nothing
+        when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(request.isAsyncStarted()).thenReturn(true);
+        filter.doFilter(request, response, writing(""));
+        verify(response, never()).getOutputStream();
+
+        // its messages are written when it is dispatched again
+        when(request.getDispatcherType()).thenReturn(DispatcherType.ASYNC);
+        when(request.isAsyncStarted()).thenReturn(false);
+        filter.doFilter(request, response, writing(body));
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        assertThat(gunzip(written.toByteArray()), is(body));
+    }
+
+    private FilterChain writing(final String body) {
+        return new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response)
+                throws IOException, ServletException {
+                if (!body.isEmpty()) {
+                    response.getWriter().write(body);
+                }
+            }
+        };
+    }
+
+    private String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private String gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import net.minidev.json.JSONArray;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.model.ClusterAggregator}
+ */
+public class ClusterAggregatorTest {
+
+    @Test
+    public void testLocationsAreClusteredByCell() {
+        ClusterAggregator aggregator = new ClusterAggregator(10);
+        aggregator.add("source1", results("POINT (1 1)", "POINT Z (3 5 100)",
+                "POLYGON ((2 2, 4 2, 4 4, 2 4, 2 2))", "POINT (-45 30)", null, "POINT EMPTY"));
+
+        JSONArray clusters = aggregator.toJson();
+
+        assertThat(clusters.size(), is(2));
+        Map<?, ?> first = (Map<?, ?>) clusters.get(0);
+        assertThat(first.get(ClusterAggregator.COUNT), is((Object) 3));
+        assertThat(first.get(ClusterAggregator.CENTROID), is((Object) Arrays.asList(2.3, 3.0)));
+        assertThat(first.get(ClusterAggregator.BBOX),
+                is((Object) Arrays.asList(1.0, 1.0, 4.0, 5.0)));
+        assertThat(((Map<?, ?>) clusters.get(1)).get(ClusterAggregator.COUNT), is((Object) 1));
+    }
+
+    @Test
+    public void testCellsOfSourcesAreAddedUp() {
+        ClusterAggregator aggregator = new ClusterAggregator(10);
+        aggregator.add("source1", results("POINT (1 1)"));
+        aggregator.add("source2", results("POINT (5 3)", "POINT (-45 30)"));
+
+        JSONArray clusters = aggregator.toJson();
+
+        assertThat(clusters.size(), is(2));
+        Map<?, ?> first = (Map<?, ?>) clusters.get(0);
+        assertThat(first.get(ClusterAggregator.COUNT), is((Object) 2));
+        assertThat(first.get(ClusterAggregator.CENTROID), is((Object) Arrays.asList(3.0, 2.0)));
+        assertThat(first.get(ClusterAggregator.BBOX),
+                is((Object) Arrays.asList(1.0, 1.0, 5.0, 3.0)));
+    }
+
+    @Test
+    public void testSourceRespondingAgainReplacesItsCells() {
+        ClusterAggregator aggregator = new ClusterAggregator(10);
+        aggregator.add("source1", results("POINT (1 1)", "POINT (2 2)"));
+        aggregator.add("source1", results("POINT (1 1)"));
+
+        JSONArray clusters = aggregator.toJson();
+
+        assertThat(clusters.size(), is(1));
+        assertThat(((Map<?, ?>) clusters.get(0)).get(ClusterAggregator.COUNT), is((Object) 1));
+    }
+
+    @Test
+    public void testBoundsOfWkt() {
+        assertThat(ClusterAggregator.getBounds("MULTIPOINT ((-10 -20), (30 40))"),
+                is(new double[] {-10, -20, 30, 40}));
+        assertThat(ClusterAggregator.getBounds("POINT EMPTY"), is(nullValue()));
+    }
+
+    private List<Result> results(String... locations) {
+        List<Result> results = new ArrayList<>();
+        for (String location : locations) {
+            MetacardImpl metacard = new MetacardImpl();
+            metacard.setLocation(location);
+
+            Result result = mock(Result.class);
+            when(result.getMetacard()).thenReturn(metacard);
+            results.add(result);
+        }
+        return results;
+    }
+}
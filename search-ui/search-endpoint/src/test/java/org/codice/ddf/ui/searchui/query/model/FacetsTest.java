@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package org.codice.ddf.ui.searchui.query.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import net.minidev.json.JSONObject;
+
+/**
+ * Test cases for {@link org.codice.ddf.ui.searchui.query.model.Facets}
+ */
+public class FacetsTest {
+
+    @Test
+    public void testCountsOfSourcesAreAddedUp() {
+        Facets facets = new Facets(Arrays.asList("source-id", "metadata-content-type"),
+                "modified", "month");
+
+        facets.add("source1", Arrays.asList(result("source1", "image", 2014, 1, 5),
+                result("source1", "video", 2014, 1, 20), result("source1", "image", 2014, 3, 1)));
+        facets.add("source2", Arrays.asList(result("source2", "image", 2014, 1, 9)));
+
+        JSONObject json = facets.toJson();
+
+        Map<?, ?> attributes = (Map<?, ?>) json.get(Facets.ATTRIBUTES);
+        assertThat(buckets(attributes.get("metadata-content-type")),
+                is((Object) Arrays.asList(Arrays.asList("image", 3), Arrays.asList("video", 1))));
+        assertThat(buckets(attributes.get("source-id")), is((Object) Arrays
+                .asList(Arrays.asList("source1", 3), Arrays.asList("source2", 1))));
+
+        Map<?, ?> histogram = (Map<?, ?>) json.get(Facets.HISTOGRAM);
+        assertThat(histogram.get(Facets.BUCKETS), is((Object) Arrays
+                .asList(Arrays.asList("2014-01-01T00:00:00.000Z", 3),
+                        Arrays.asList("2014-03-01T00:00:00.000Z", 1))));
+    }
+
+    @Test
+    public void testSourceRespondingAgainReplacesItsCounts() {
+        Facets facets = new Facets(Collections.singletonList("source-id"), null, null);
+
+        facets.add("source1", Arrays.asList(result("source1", "image", 2014, 1, 5)));
+        List<Result> results = new ArrayList<>();
+        results.add(result("source1", "image", 2014, 1, 5));
+        results.add(result("source1", "image", 2014, 1, 6));
+        facets.add("source1", results);
+
+        Map<?, ?> attributes = (Map<?, ?>) facets.toJson().get(Facets.ATTRIBUTES);
+        assertThat(buckets(attributes.get("source-id")),
+                is((Object) Arrays.asList(Arrays.asList("source1", 2))));
+    }
+
+    private Object buckets(Object facet) {
+        return ((Map<?, ?>) facet).get(Facets.BUCKETS);
+    }
+
+    private Result result(String sourceId, String contentType, int year, int month, int day) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setSourceId(sourceId);
+        metacard.setContentTypeName(contentType);
+        metacard.setModifiedDate(new DateTime(year, month, day, 12, 0, DateTimeZone.UTC).toDate());
+
+        Result result = mock(Result.class);
+        when(result.getMetacard()).thenReturn(metacard);
+        return result;
+    }
+}
@@ -25,6 +25,53 @@ define(['jquery', 'jquerycometd'], function ($) {
 //        logLevel: 'debug'
     });
 
+    // Searches started with encoding=dict replace the strings repeated within a message with
+    // references into a string table sent along with it. A reference is a tilde followed by the
+    // base 36 index of the string, and strings starting with a tilde are escaped with another one.
+    var expandString = function (value, strings) {
+        if (value.charAt(0) !== '~') {
+            return value;
+        }
+        if (value.charAt(1) === '~') {
+            return value.substring(1);
+        }
+        return strings[parseInt(value.substring(1), 36)];
+    };
+
+    var expandValue = function (value, strings) {
+        var expanded, key;
+        if (typeof value === 'string') {
+            return expandString(value, strings);
+        }
+        if ($.isArray(value)) {
+            return $.map(value, function (item) {
+                // $.map flattens arrays and drops nulls, so wrap every item
+                return [expandValue(item, strings)];
+            });
+        }
+        if (value !== null && typeof value === 'object') {
+            expanded = {};
+            for (key in value) {
+                if (value.hasOwnProperty(key)) {
+                    expanded[expandString(key, strings)] = expandValue(value[key], strings);
+                }
+            }
+            return expanded;
+        }
+        return value;
+    };
+
+    Cometd.Comet.registerExtension('dictionary', {
+        incoming: function (message) {
+            var data = message.data;
+            if (data && data.encoding === 'dict') {
+                message.data = expandValue(data.body, data.strings);
+                message.data.successful = data.successful;
+            }
+            return message;
+        }
+    });
+
     Cometd.Comet.onListenerException = function(exception, subscriptionHandle, isListener, message) {
         if (typeof console !== 'undefined') {
             console.error("Cometd listener threw an exception", exception, message, subscriptionHandle, isListener);
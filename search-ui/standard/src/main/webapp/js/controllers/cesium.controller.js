@@ -38,6 +38,11 @@ define(['underscore',
             SI: Cesium.SingleTileImageryProvider
         };
 
+        // size on screen, in pixels, of the cells results are clustered into
+        var CLUSTER_CELL_PIXELS = 64;
+
+        var METERS_PER_DEGREE = 111319.49;
+
         var Controller = Marionette.Controller.extend({
             initialize: function () {
                 this.mapViewer = this.createMap('cesiumContainer');
@@ -50,6 +55,7 @@ define(['underscore',
                 this.listenTo(wreqr.vent, 'search:mapshow', this.flyToLocation);
                 this.listenTo(wreqr.vent, 'search:start', this.clearResults);
                 this.listenTo(wreqr.vent, 'map:results', this.newResults);
+                wreqr.reqres.setHandler('map:clusterCellSize', _.bind(this.getClusterCellSize, this));
                 this.listenTo(wreqr.vent, 'map:clear', this.clear);
 
                 if (wreqr.reqres.hasHandler('search:results')) {
@@ -310,7 +316,15 @@ define(['underscore',
                 }
             },
 
+            getClusterCellSize: function () {
+                var scene = this.mapViewer.scene;
+                // the ground seen from the camera is about as wide as the camera is high
+                var metersPerPixel = scene.camera.positionCartographic.height / scene.canvas.clientWidth;
+                return metersPerPixel / METERS_PER_DEGREE * CLUSTER_CELL_PIXELS;
+            },
+
             newResults: function (result, zoomOnResults) {
+                this.showClusters(result.get('clusters'));
                 this.showResults(result.get('results'));
                 if (zoomOnResults) {
                     this.flyToCenterPoint(result.get('results'));
@@ -327,12 +341,41 @@ define(['underscore',
                 }).render();
             },
 
+            // clusters cover all the results of the search, the results themselves are drawn on top
+            showClusters: function (clusters) {
+                this.clearClusters();
+                if (_.isEmpty(clusters)) {
+                    return;
+                }
+
+                this.clusterLabels = new Cesium.LabelCollection();
+                _.each(clusters, function (cluster) {
+                    this.clusterLabels.add({
+                        position: this.ellipsoid.cartographicToCartesian(
+                            Cesium.Cartographic.fromDegrees(cluster.centroid[0], cluster.centroid[1])),
+                        text: String(cluster.count),
+                        fillColor: Cesium.Color.WHITE,
+                        outlineColor: Cesium.Color.fromCssColorString('#3399CC'),
+                        style: Cesium.LabelStyle.FILL_AND_OUTLINE
+                    });
+                }, this);
+                this.mapViewer.scene.primitives.add(this.clusterLabels);
+            },
+
+            clearClusters: function () {
+                if (this.clusterLabels) {
+                    this.mapViewer.scene.primitives.remove(this.clusterLabels);
+                    this.clusterLabels = undefined;
+                }
+            },
+
             clear: function () {
                 this.clearResults();
                 this.billboardCollection.removeAll();
             },
 
             clearResults: function () {
+                this.clearClusters();
                 if (this.mapViews) {
                     this.mapViews.destroy();
                 }
@@ -33,6 +33,11 @@ define(['underscore',
             SI: ol.source.ImageStatic
         };
 
+        // size on screen, in pixels, of the cells results are clustered into
+        var CLUSTER_CELL_PIXELS = 64;
+
+        var METERS_PER_DEGREE = 111319.49;
+
         var Controller = Marionette.Controller.extend({
             initialize: function () {
                 if (properties.gazetteer) {
@@ -46,6 +51,7 @@ define(['underscore',
                 this.listenTo(wreqr.vent, 'search:start', this.clearResults);
                 this.listenTo(wreqr.vent, 'map:results', this.newResults);
                 this.listenTo(wreqr.vent, 'map:clear', this.clear);
+                wreqr.reqres.setHandler('map:clusterCellSize', _.bind(this.getClusterCellSize, this));
 
                 if (wreqr.reqres.hasHandler('search:results')) {
                     this.newResults(wreqr.reqres.request('search:results'));
@@ -322,7 +328,14 @@ define(['underscore',
                 }
             },
 
+            getClusterCellSize: function () {
+                var view = this.mapViewer.getView();
+                var degreesPerPixel = view.getResolution() * view.getProjection().getMetersPerUnit() / METERS_PER_DEGREE;
+                return degreesPerPixel * CLUSTER_CELL_PIXELS;
+            },
+
             newResults: function (result, zoomOnResults) {
+                this.showClusters(result.get('clusters'));
                 this.showResults(result.get('results'));
                 if (zoomOnResults) {
                     this.flyToCenterPoint(result.get('results'));
@@ -339,11 +352,49 @@ define(['underscore',
                 }).render();
             },
 
+            // clusters cover all the results of the search, the results themselves are drawn on top
+            showClusters: function (clusters) {
+                this.clearClusters();
+                if (_.isEmpty(clusters)) {
+                    return;
+                }
+
+                var features = _.map(clusters, function (cluster) {
+                    var feature = new ol.Feature({
+                        geometry: new ol.geom.Point(ol.proj.transform(cluster.centroid, 'EPSG:4326', properties.projection))
+                    });
+                    feature.setStyle(new ol.style.Style({
+                        image: new ol.style.Circle({
+                            radius: Math.min(30, 8 + 2 * Math.log(cluster.count)),
+                            fill: new ol.style.Fill({color: 'rgba(51, 153, 204, 0.5)'}),
+                            stroke: new ol.style.Stroke({color: '#3399CC', width: 1})
+                        }),
+                        text: new ol.style.Text({
+                            text: String(cluster.count),
+                            fill: new ol.style.Fill({color: '#fff'})
+                        })
+                    }));
+                    return feature;
+                });
+                this.clusterLayer = new ol.layer.Vector({
+                    source: new ol.source.Vector({features: features})
+                });
+                this.mapViewer.addLayer(this.clusterLayer);
+            },
+
+            clearClusters: function () {
+                if (this.clusterLayer) {
+                    this.mapViewer.removeLayer(this.clusterLayer);
+                    this.clusterLayer = undefined;
+                }
+            },
+
             clear: function () {
                 this.clearResults();
             },
 
             clearResults: function () {
+                this.clearClusters();
                 if (this.mapViews) {
                     this.mapViews.destroy();
                 }
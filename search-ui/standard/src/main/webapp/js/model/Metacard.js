@@ -15,12 +15,62 @@ define([
         'backbone',
         'underscore',
         'wreqr',
+        'cometdinit',
         'backboneassociations'
     ],
-    function (Backbone, _, wreqr) {
+    function (Backbone, _, wreqr, Cometd) {
         "use strict";
         var MetaCard = {};
 
+        // Schemas of the metacard types sent by reference, shared by every search of the session.
+        // Each entry is {version: ..., schema: ...}.
+        var typeCache = {};
+        var typeRequests = [];
+        var typeListener;
+
+        // Sections of a search update computed over all the results of the search, see Query.js
+        var AGGREGATIONS = ['clusters', 'facets'];
+
+        var cachedTypes = function (versions) {
+            var types = {};
+            var missing = [];
+            _.each(versions, function (version, name) {
+                if (typeCache[name] && typeCache[name].version === version) {
+                    types[name] = typeCache[name].schema;
+                } else {
+                    missing.push(name);
+                }
+            });
+            return {types: types, missing: missing};
+        };
+
+        var resolveTypes = function (versions, callback) {
+            var cached = cachedTypes(versions);
+            if (_.isEmpty(cached.missing)) {
+                callback(cached.types);
+                return;
+            }
+
+            if (!typeListener) {
+                typeListener = Cometd.Comet.addListener('/service/metacardtypes', function (message) {
+                    var data = message.data || {};
+                    _.each(data['metacard-types'], function (schema, name) {
+                        typeCache[name] = {
+                            version: data['metacard-type-versions'][name],
+                            schema: schema
+                        };
+                    });
+                    var requests = typeRequests;
+                    typeRequests = [];
+                    _.each(requests, function (request) {
+                        request.callback(cachedTypes(request.versions).types);
+                    });
+                });
+            }
+            typeRequests.push({versions: versions, callback: callback});
+            Cometd.Comet.publish('/service/metacardtypes', {names: cached.missing});
+        };
+
         MetaCard.Geometry = Backbone.AssociatedModel.extend({
 
             isPoint: function () {
@@ -184,6 +234,36 @@ define([
 
         });
 
+        // Metacards waiting for their full resolution geometry and attributes, keyed by metacard id.
+        var metacardRequests = {};
+        var metacardListener;
+
+        var fetchMetacard = function (metacard) {
+            var properties = metacard.get('properties');
+            var id = properties.get('id');
+            if (metacardRequests[id]) {
+                return;
+            }
+
+            if (!metacardListener) {
+                metacardListener = Cometd.Comet.addListener('/service/query/metacard', function (message) {
+                    var data = message.data || {};
+                    var waiting = metacardRequests[data.id];
+                    delete metacardRequests[data.id];
+                    if (waiting && data.successful && data.metacard) {
+                        waiting.set({
+                            geometry: data.metacard.geometry,
+                            properties: data.metacard.properties,
+                            simplified: false,
+                            projected: false
+                        });
+                    }
+                });
+            }
+            metacardRequests[id] = metacard;
+            Cometd.Comet.publish('/service/query/metacard', {id: id, src: properties.get('source-id')});
+        };
+
         MetaCard.Metacard = Backbone.AssociatedModel.extend({
             url: '/services/catalog/',
 
@@ -196,6 +276,10 @@ define([
                     this.set('context', false);
                 } else {
                     this.set('context', true);
+                    if (this.get('simplified') || this.get('projected')) {
+                        // the search sent a geometry simplified for the map or only some attributes
+                        fetchMetacard(this);
+                    }
                 }
             },
 
@@ -247,13 +331,164 @@ define([
             ],
             url: "/service/query",
             parse: function (resp) {
-                if (resp.data) {
-                    return resp.data;
+                var data = resp.data ? resp.data : resp;
+                if (_.has(data, 'chunk')) {
+                    this.applyChunk(data);
+                }
+                if (_.has(data, 'seq') && !this.applyDelta(data)) {
+                    // a delta that cannot be applied leaves the results as they are
+                    return undefined;
+                }
+                if (_.has(data, 'metacard-type-versions')) {
+                    this.applyTypeVersions(data);
+                }
+                return data;
+            },
+            resetDelta: function () {
+                this.deltaState = undefined;
+                this.streamState = undefined;
+            },
+            // Searches started with stream=true receive every update as a series of chunks. The
+            // chunks received so far are shown right away, together with the statuses of the
+            // last complete update, and chunks of an update older than the current one are
+            // dropped. The message is rewritten in place like a delta.
+            applyChunk: function (data) {
+                var state = this.streamState;
+                if (data.applied) {
+                    return;
+                }
+
+                if (!state || data.stream > state.stream) {
+                    state = this.streamState = {
+                        stream: data.stream,
+                        chunks: [],
+                        types: {},
+                        versions: {},
+                        status: state ? state.status : [],
+                        aggregations: state ? state.aggregations : {}
+                    };
+                }
+                if (data.stream === state.stream) {
+                    state.hits = data.hits;
+                    state.chunks[data.chunk] = data.results;
+                    _.extend(state.types, data['metacard-types']);
+                    _.extend(state.versions, data['metacard-type-versions']);
+                    if (data.status) {
+                        state.status = data.status;
+                        state.aggregations = _.pick(data, AGGREGATIONS);
+                    }
+                }
+
+                var results = [];
+                for (var i = 0; i < state.chunks.length && state.chunks[i]; i++) {
+                    results = results.concat(state.chunks[i]);
+                }
+                data.hits = state.hits;
+                data.results = results;
+                data.status = state.status;
+                _.extend(data, state.aggregations);
+                data['metacard-types'] = state.types;
+                if (_.has(data, 'metacard-type-versions')) {
+                    data['metacard-type-versions'] = state.versions;
+                }
+                delete data.chunk;
+                delete data.chunks;
+                delete data.offset;
+                data.applied = true;
+            },
+            // Searches started with delta=true are sent a full snapshot first and then only what
+            // changed. The changes are folded into the last known state and the message is
+            // rewritten in place, so everything reading the response still sees a complete one.
+            // After a missed update, deltas are dropped until the snapshot asked for arrives.
+            // Returns false if the message was dropped.
+            applyDelta: function (data) {
+                var state = this.deltaState;
+                if (data.applied) {
+                    return true;
+                }
+
+                if (!data.delta) {
+                    state = this.deltaState = {
+                        seq: data.seq,
+                        hits: data.hits,
+                        order: data.keys || [],
+                        results: {},
+                        statusOrder: [],
+                        status: {},
+                        aggregations: _.pick(data, AGGREGATIONS),
+                        types: _.clone(data['metacard-types']) || {}
+                    };
+                    _.each(data.results, function (result, index) {
+                        state.results[state.order[index]] = result;
+                    });
+                    _.each(data.status, function (status) {
+                        state.statusOrder.push(status.id);
+                        state.status[status.id] = status;
+                    });
+                } else if (!state || state.snapshotPending || data.seq <= state.seq) {
+                    return false;
+                } else if (data.seq > state.seq + 1) {
+                    // missed an update, ask for the whole thing again, once
+                    state.snapshotPending = true;
+                    Cometd.Comet.publish('/service/query/snapshot', {id: data.id});
+                    return false;
+                } else {
+                    state.seq = data.seq;
+                    state.hits = data.hits;
+                    _.each(data.removed, function (key) {
+                        delete state.results[key];
+                    });
+                    _.extend(state.results, data.added);
+                    if (data.order) {
+                        state.order = data.order;
+                    }
+                    _.each(data.status, function (status) {
+                        if (!_.has(state.status, status.id)) {
+                            state.statusOrder.push(status.id);
+                        }
+                        state.status[status.id] = status;
+                    });
+                    _.extend(state.types, data['metacard-types']);
+                    // aggregations are only sent when they change
+                    _.extend(state.aggregations, _.pick(data, AGGREGATIONS));
+                }
+
+                data.hits = state.hits;
+                data.results = _.map(state.order, function (key) {
+                    return state.results[key];
+                });
+                data.status = _.map(state.statusOrder, function (id) {
+                    return state.status[id];
+                });
+                _.extend(data, state.aggregations);
+                data['metacard-types'] = state.types;
+                delete data.keys;
+                delete data.added;
+                delete data.removed;
+                delete data.order;
+                data.applied = true;
+                return true;
+            },
+            // Searches started with typeRefs=true are only sent the name and version of each
+            // metacard type. Known schemas are filled in right away, the others are fetched once
+            // and set on the model when they arrive.
+            applyTypeVersions: function (data) {
+                var model = this;
+                var versions = data['metacard-type-versions'];
+                var cached = cachedTypes(versions);
+                data['metacard-types'] = cached.types;
+                if (!_.isEmpty(cached.missing)) {
+                    resolveTypes(versions, function (types) {
+                        model.set('metacard-types', types);
+                    });
                 }
-                return resp;
             },
             cancel: function() {
                 this.unsubscribe();
+                if (this.id) {
+                    // stop the queries still running for this search on the server
+                    Cometd.Comet.publish('/service/query/cancel', {id: this.id});
+                }
                 if(this.has('status')){
                     var statuses = this.get('status');
                     statuses.forEach(function(status) {
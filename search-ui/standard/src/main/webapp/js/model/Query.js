@@ -19,14 +19,18 @@ define([
         'js/model/Metacard',
         'usngs',
         'js/model/Filter',
+        'wreqr',
         'backboneassociations'
     ],
-    function (Backbone, _, properties, moment, Metacard, usngs, Filter) {
+    function (Backbone, _, properties, moment, Metacard, usngs, Filter, wreqr) {
         "use strict";
         var Query = {};
 
         var converter = new usngs.Converter();
 
+        // pages larger than this are streamed in chunks instead of sent as one message
+        var STREAM_THRESHOLD = 500;
+
         Query.Model = Backbone.AssociatedModel.extend({
             relations: [
                 {
@@ -446,6 +450,36 @@ define([
 
                 data.sort = this.get('sortField') + ':' + this.get('sortOrder');
 
+                if (data.count > STREAM_THRESHOLD) {
+                    // large pages arrive in chunks, see Metacard.SearchResult
+                    data.stream = true;
+                } else {
+                    // only ask for what changed after the first response, see Metacard.SearchResult
+                    data.delta = true;
+                }
+                // metacard type schemas are fetched once per session, see Metacard.SearchResult
+                data.typeRefs = true;
+                // repeated strings are sent once per message, expanded again in cometd.js
+                data.encoding = 'dict';
+                if (properties.geometryTolerance > 0) {
+                    // detailed geometries are fetched when a metacard is selected, see Metacard.js
+                    data.tolerance = properties.geometryTolerance;
+                }
+                if (!_.isEmpty(properties.facets)) {
+                    data.facets = properties.facets.join(',');
+                }
+                if (properties.histogram) {
+                    data.histogram = properties.histogram;
+                }
+                if (!_.isEmpty(properties.resultFields)) {
+                    // the other attributes are fetched when a metacard is selected, see Metacard.js
+                    data.fields = properties.resultFields.join(',');
+                }
+                if (wreqr.reqres.hasHandler('map:clusterCellSize')) {
+                    // the map shows where every result is, not only the ones on this page
+                    data.cluster = wreqr.reqres.request('map:clusterCellSize');
+                }
+
                 return data;
             },
 
@@ -454,6 +488,7 @@ define([
                 var result;
                 if (this.get('result')) {
                     result = this.get('result');
+                    result.resetDelta();
                 } else {
                     result = new Metacard.SearchResult();
                     this.set({result: result});
@@ -23,6 +23,19 @@ define(function (require) {
 
         defaultFlytoHeight : 15000.0,
 
+        // degrees by which result geometries may be simplified for the map, 0 for full resolution
+        geometryTolerance : 0.0001,
+
+        // attributes whose values are counted over all the results of a search, such as
+        // ['source-id', 'metadata-content-type'], and a date attribute to build a histogram of,
+        // such as 'modified:month'
+        facets : [],
+        histogram : undefined,
+
+        // the only attributes sent with each search result, besides its id, source and type, the
+        // others are fetched when a metacard is selected, empty to send all of them
+        resultFields : ['title', 'modified', 'created', 'effective', 'metadata-content-type'],
+
         CQL_DATE_FORMAT : 'YYYY-MM-DD[T]HH:mm:ss[Z]',
 
         ui: {},